@@ -0,0 +1,96 @@
+package com.github.mmin18.blur;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each kernel on a full screen blur view, at the size RealtimeBlurView.prepare() makes
+ * the bitmap for common screens and downsample factors.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlurBenchmark {
+
+	@Param({"720x1280", "1080x1920", "1440x2560"})
+	public String screen;
+
+	@Param({"2", "4", "8"})
+	public float downsampleFactor;
+
+	@Param({"5", "10", "25"})
+	public int radius;
+
+	@Param({"gaussian", "box", "stack"})
+	public String kernel;
+
+	@Param({"true", "false"})
+	public boolean premultiplied;
+
+	private BlurKernel mKernel;
+	private int mWidth, mHeight;
+	private int[] mSrc, mDst;
+
+	@Setup
+	public void setup() {
+		int x = screen.indexOf('x');
+		// same as RealtimeBlurView.prepare()
+		mWidth = Math.max(1, (int) (Integer.parseInt(screen.substring(0, x)) / downsampleFactor));
+		mHeight = Math.max(1, (int) (Integer.parseInt(screen.substring(x + 1)) / downsampleFactor));
+		mSrc = randomPixels(mWidth, mHeight);
+		mDst = new int[mSrc.length];
+		mKernel = createKernel(kernel, premultiplied);
+	}
+
+	@Benchmark
+	public int[] blur() {
+		mKernel.blur(mSrc, mDst, mWidth, mHeight, radius);
+		return mDst;
+	}
+
+	static BlurKernel createKernel(String name, boolean premultiplied) {
+		switch (name) {
+			case "gaussian":
+				return new GaussianBlur(premultiplied);
+			case "box":
+				return new BoxBlur(premultiplied);
+			case "stack":
+				return new StackBlur(premultiplied);
+			default:
+				throw new IllegalArgumentException(name);
+		}
+	}
+
+	/**
+	 * Opaque noise over a few large shapes, something like a real screen
+	 */
+	static int[] randomPixels(int width, int height) {
+		Random random = new Random(width * 31 + height);
+		int[] pixels = new int[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int base = ((x * 8 / width + y * 8 / height) & 1) == 0 ? 0xe0 : 0x30;
+				int r = Math.min(255, base + random.nextInt(32));
+				int g = Math.min(255, base + random.nextInt(32));
+				int b = Math.min(255, base + random.nextInt(32));
+				pixels[y * width + x] = 0xff000000 | r << 16 | g << 8 | b;
+			}
+		}
+		return pixels;
+	}
+}
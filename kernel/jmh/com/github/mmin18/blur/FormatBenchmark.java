@@ -0,0 +1,77 @@
+package com.github.mmin18.blur;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StackBlurImpl on a RGB_565 or ALPHA_8 bitmap, the stack blur plus expanding the pixels
+ * to 32-bit and packing them back. The bitmaps take 4, 2 and 1 bytes per pixel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatBenchmark {
+
+	@Param({"720x1280", "1080x1920"})
+	public String screen;
+
+	@Param({"4"})
+	public float downsampleFactor;
+
+	@Param({"10"})
+	public int radius;
+
+	@Param({"argb_8888", "rgb_565", "alpha_8"})
+	public String config;
+
+	private int mWidth, mHeight;
+	private int[] mPixels, mScratch, mOutput;
+	private short[] mShorts;
+	private byte[] mBytes;
+	private final int[] mStack = new int[2 * StackBlur.MAX_RADIUS + 1];
+
+	@Setup
+	public void setup() {
+		int x = screen.indexOf('x');
+		mWidth = Math.max(1, (int) (Integer.parseInt(screen.substring(0, x)) / downsampleFactor));
+		mHeight = Math.max(1, (int) (Integer.parseInt(screen.substring(x + 1)) / downsampleFactor));
+		mPixels = BlurBenchmark.randomPixels(mWidth, mHeight);
+		mScratch = new int[mPixels.length];
+		mOutput = new int[mPixels.length];
+		mShorts = new short[mPixels.length];
+		mBytes = new byte[mPixels.length];
+		Pixels.packRgb565(mPixels, mShorts, mWidth, mWidth, mHeight);
+		Pixels.packAlpha8(mPixels, mBytes, mWidth, mWidth, mHeight);
+	}
+
+	@Benchmark
+	public int[] blur() {
+		if ("rgb_565".equals(config)) {
+			Pixels.expandRgb565(mShorts, mWidth, mPixels, mWidth, mHeight);
+		} else if ("alpha_8".equals(config)) {
+			Pixels.expandAlpha8(mBytes, mWidth, mPixels, mWidth, mHeight);
+		}
+		StackBlur.blurRows(mPixels, mScratch, mWidth, radius, 0, mHeight, 0, mWidth, mStack);
+		StackBlur.blurColumns(mScratch, mOutput, mWidth, mHeight, radius, 0, mWidth, 0, mHeight, mStack);
+		if ("rgb_565".equals(config)) {
+			Pixels.packRgb565(mOutput, mShorts, mWidth, mWidth, mHeight);
+		} else if ("alpha_8".equals(config)) {
+			Pixels.packAlpha8(mOutput, mBytes, mWidth, mWidth, mHeight);
+		}
+		return mOutput;
+	}
+}
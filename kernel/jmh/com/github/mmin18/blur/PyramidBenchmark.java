@@ -0,0 +1,155 @@
+package com.github.mmin18.blur;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BLUR_MODE_CLAMP against BLUR_MODE_PYRAMID for large radii, on a 1080x1920 xxhdpi
+ * screen with the default downsample factor 4.
+ * <p>
+ * Clamp blurs a smaller bitmap with radius 25 and the view stretches it without
+ * filtering. Pyramid blurs at the downsampled size. After each trial the mean error
+ * against a true gaussian of the requested radius is printed, to compare the quality.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PyramidBenchmark {
+	private static final int SCREEN_WIDTH = 1080, SCREEN_HEIGHT = 1920;
+	private static final float DENSITY = 3;
+	private static final float DOWNSAMPLE_FACTOR = 4;
+
+	@Param({"10", "25", "50", "100", "200"})
+	public int radiusDp;
+
+	@Param({"clamp", "pyramid"})
+	public String mode;
+
+	private int mWidth, mHeight, mRadius;
+	private int mLevels, mLevelRadius;
+	private int[] mSrc, mDst;
+	private int[][] mLevelPixels;
+	private int[] mScratch;
+	private final int[] mStack = new int[2 * StackBlur.MAX_RADIUS + 1];
+	private final StackBlur mStackBlur = new StackBlur(true);
+
+	@Setup
+	public void setup() {
+		// same as RealtimeBlurView.prepare()
+		float downsampleFactor = DOWNSAMPLE_FACTOR;
+		float radius = radiusDp * DENSITY / downsampleFactor;
+		boolean pyramid = "pyramid".equals(mode);
+		if (radius > 25 && !pyramid) {
+			downsampleFactor = downsampleFactor * radius / 25;
+			radius = 25;
+		}
+		mWidth = Math.max(1, (int) (SCREEN_WIDTH / downsampleFactor));
+		mHeight = Math.max(1, (int) (SCREEN_HEIGHT / downsampleFactor));
+		mRadius = Math.round(radius);
+		mSrc = BlurBenchmark.randomPixels(mWidth, mHeight);
+		mDst = new int[mSrc.length];
+
+		mLevels = pyramid ? PyramidBlur.getLevels(radius) : 0;
+		mLevelRadius = pyramid ? PyramidBlur.getLevelRadius(radius, mLevels) : mRadius;
+		mLevelPixels = new int[mLevels + 1][];
+		for (int i = 0; i <= mLevels; i++) {
+			mLevelPixels[i] = new int[PyramidBlur.getLevelSize(mWidth, i) * PyramidBlur.getLevelSize(mHeight, i)];
+		}
+		mScratch = new int[mLevelPixels[mLevels].length];
+	}
+
+	@Benchmark
+	public int[] blur() {
+		if (mLevels == 0) {
+			mStackBlur.blur(mSrc, mDst, mWidth, mHeight, mRadius);
+			return mDst;
+		}
+		System.arraycopy(mSrc, 0, mLevelPixels[0], 0, mSrc.length);
+		for (int i = 0; i < mLevels; i++) {
+			PyramidBlur.downsample(mLevelPixels[i], PyramidBlur.getLevelSize(mWidth, i),
+					PyramidBlur.getLevelSize(mHeight, i), mLevelPixels[i + 1]);
+		}
+		int w = PyramidBlur.getLevelSize(mWidth, mLevels);
+		int h = PyramidBlur.getLevelSize(mHeight, mLevels);
+		StackBlur.blurRows(mLevelPixels[mLevels], mScratch, w, mLevelRadius, 0, h, 0, w, mStack);
+		StackBlur.blurColumns(mScratch, mLevelPixels[mLevels], w, h, mLevelRadius, 0, w, 0, h, mStack);
+		for (int i = mLevels - 1; i >= 0; i--) {
+			PyramidBlur.upsample(mLevelPixels[i + 1], mLevelPixels[i],
+					PyramidBlur.getLevelSize(mWidth, i), PyramidBlur.getLevelSize(mHeight, i));
+		}
+		System.arraycopy(mLevelPixels[0], 0, mDst, 0, mDst.length);
+		return mDst;
+	}
+
+	@TearDown(Level.Trial)
+	public void printError() {
+		// reference: gaussian of the requested radius at the default downsampled size
+		int width = (int) (SCREEN_WIDTH / DOWNSAMPLE_FACTOR);
+		int height = (int) (SCREEN_HEIGHT / DOWNSAMPLE_FACTOR);
+		double sigma = 0.4 * radiusDp * DENSITY / DOWNSAMPLE_FACTOR + 0.6;
+		int[] src = BlurBenchmark.randomPixels(width, height);
+		double[] reference = gaussian(src, width, height, sigma);
+
+		// what the view shows, the result stretched without filtering
+		blur();
+		double error = 0;
+		for (int y = 0; y < height; y++) {
+			int sy = Math.min(mHeight - 1, y * mHeight / height);
+			for (int x = 0; x < width; x++) {
+				int sx = Math.min(mWidth - 1, x * mWidth / width);
+				error += Math.abs((mDst[sy * mWidth + sx] & 0xff) - reference[y * width + x]);
+			}
+		}
+		System.out.printf("%n%s %ddp: %dx%d, mean error %.2f%n", mode, radiusDp, mWidth, mHeight, error / (width * height));
+	}
+
+	// blue channel only, clamped edges
+	private static double[] gaussian(int[] src, int width, int height, double sigma) {
+		int r = (int) Math.ceil(3 * sigma);
+		double[] kernel = new double[2 * r + 1];
+		double sum = 0;
+		for (int i = -r; i <= r; i++) {
+			kernel[i + r] = Math.exp(-i * i / (2 * sigma * sigma));
+			sum += kernel[i + r];
+		}
+		double[] tmp = new double[width * height];
+		double[] out = new double[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				double v = 0;
+				for (int i = -r; i <= r; i++) {
+					int sx = Math.max(0, Math.min(width - 1, x + i));
+					v += kernel[i + r] * (src[y * width + sx] & 0xff);
+				}
+				tmp[y * width + x] = v / sum;
+			}
+		}
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				double v = 0;
+				for (int i = -r; i <= r; i++) {
+					int sy = Math.max(0, Math.min(height - 1, y + i));
+					v += kernel[i + r] * tmp[sy * width + x];
+				}
+				out[y * width + x] = v / sum;
+			}
+		}
+		return out;
+	}
+}
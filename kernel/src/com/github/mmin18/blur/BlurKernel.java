@@ -0,0 +1,16 @@
+package com.github.mmin18.blur;
+
+/**
+ * A separable blur on packed 32-bit pixels (4 bytes per pixel, like ARGB_8888).
+ * Implementations keep their scratch buffers between calls and are not thread safe.
+ */
+public interface BlurKernel {
+
+	/**
+	 * @param src    width * height pixels, not modified
+	 * @param dst    width * height pixels, must not be the same array as src
+	 * @param radius blur radius in pixels
+	 */
+	void blur(int[] src, int[] dst, int width, int height, int radius);
+
+}
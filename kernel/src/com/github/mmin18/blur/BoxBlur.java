@@ -0,0 +1,129 @@
+package com.github.mmin18.blur;
+
+import java.util.Arrays;
+
+/**
+ * Separable box blur, the average of 2 * radius + 1 pixels on each axis. The cheapest
+ * kernel, but a single box pass looks blocky compared to a gaussian.
+ * <p>
+ * The horizontal pass is a running sum along each row. The vertical pass keeps a running
+ * sum per column and moves a whole row at a time, so its inner loops vectorize (rows are
+ * copied to a line buffer first, C2 doesn't vectorize with mismatched offsets). Division
+ * is a multiplication by the 16.16 fixed point reciprocal, rounded.
+ */
+public final class BoxBlur implements BlurKernel {
+	private static final int SHIFT = 16;
+	private static final int HALF = 1 << (SHIFT - 1);
+
+	private final boolean mPremultiplied;
+	private int[] mInput, mScratch, mLine;
+	private int[] mSum0, mSum1, mSum2, mSum3;
+
+	/**
+	 * @param premultiplied false if the pixels are ARGB colors (not premultiplied by alpha),
+	 *                      they are premultiplied before the blur and restored after it
+	 */
+	public BoxBlur(boolean premultiplied) {
+		mPremultiplied = premultiplied;
+	}
+
+	/**
+	 * @param radius at most 128, so the sum of a channel fits in 16.16 fixed point math
+	 */
+	@Override
+	public void blur(int[] src, int[] dst, int width, int height, int radius) {
+		radius = Math.max(0, Math.min(128, radius));
+		final int size = width * height;
+		if (mScratch == null || mScratch.length < size) {
+			mScratch = new int[size];
+		}
+		if (mSum0 == null || mSum0.length < width) {
+			mLine = new int[width];
+			mSum0 = new int[width];
+			mSum1 = new int[width];
+			mSum2 = new int[width];
+			mSum3 = new int[width];
+		}
+		int[] in = src;
+		if (!mPremultiplied) {
+			if (mInput == null || mInput.length < size) {
+				mInput = new int[size];
+			}
+			Pixels.premultiply(src, mInput, size);
+			in = mInput;
+		}
+
+		final int div = 2 * radius + 1;
+		final int mul = ((1 << SHIFT) + div / 2) / div;
+		final int lastX = width - 1;
+		for (int y = 0; y < height; y++) {
+			final int offset = y * width;
+			int s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+			for (int i = -radius; i <= radius; i++) {
+				int p = in[offset + (i < 0 ? 0 : (i > lastX ? lastX : i))];
+				s0 += p & 0xff;
+				s1 += (p >>> 8) & 0xff;
+				s2 += (p >>> 16) & 0xff;
+				s3 += p >>> 24;
+			}
+			for (int x = 0; x < width; x++) {
+				mScratch[offset + x] = ((s3 * mul + HALF) >>> SHIFT) << 24 | ((s2 * mul + HALF) >>> SHIFT) << 16
+						| ((s1 * mul + HALF) >>> SHIFT) << 8 | ((s0 * mul + HALF) >>> SHIFT);
+				int out = x - radius;
+				int next = x + radius + 1;
+				int po = in[offset + (out < 0 ? 0 : out)];
+				int pi = in[offset + (next > lastX ? lastX : next)];
+				s0 += (pi & 0xff) - (po & 0xff);
+				s1 += ((pi >>> 8) & 0xff) - ((po >>> 8) & 0xff);
+				s2 += ((pi >>> 16) & 0xff) - ((po >>> 16) & 0xff);
+				s3 += (pi >>> 24) - (po >>> 24);
+			}
+		}
+
+		final int lastY = height - 1;
+		Arrays.fill(mSum0, 0, width, 0);
+		Arrays.fill(mSum1, 0, width, 0);
+		Arrays.fill(mSum2, 0, width, 0);
+		Arrays.fill(mSum3, 0, width, 0);
+		for (int i = -radius; i <= radius; i++) {
+			addRow(mScratch, (i < 0 ? 0 : (i > lastY ? lastY : i)) * width, 1, width);
+		}
+		for (int y = 0; y < height; y++) {
+			pack(mul, width);
+			System.arraycopy(mLine, 0, dst, y * width, width);
+			int out = y - radius;
+			int next = y + radius + 1;
+			addRow(mScratch, (out < 0 ? 0 : out) * width, -1, width);
+			addRow(mScratch, (next > lastY ? lastY : next) * width, 1, width);
+		}
+
+		if (!mPremultiplied) {
+			Pixels.unpremultiply(dst, dst, size);
+		}
+	}
+
+	private void addRow(int[] src, int offset, int sign, int count) {
+		final int[] line = mLine;
+		System.arraycopy(src, offset, line, 0, count);
+		final int[] s0 = mSum0, s1 = mSum1, s2 = mSum2, s3 = mSum3;
+		for (int x = 0; x < count; x++) {
+			int p = line[x];
+			s0[x] += sign * (p & 0xff);
+			s1[x] += sign * ((p >>> 8) & 0xff);
+			s2[x] += sign * ((p >>> 16) & 0xff);
+			s3[x] += sign * (p >>> 24);
+		}
+	}
+
+	/**
+	 * Into mLine
+	 */
+	private void pack(int mul, int count) {
+		final int[] line = mLine;
+		final int[] s0 = mSum0, s1 = mSum1, s2 = mSum2, s3 = mSum3;
+		for (int x = 0; x < count; x++) {
+			line[x] = ((s3[x] * mul + HALF) >>> SHIFT) << 24 | ((s2[x] * mul + HALF) >>> SHIFT) << 16
+					| ((s1[x] * mul + HALF) >>> SHIFT) << 8 | ((s0[x] * mul + HALF) >>> SHIFT);
+		}
+	}
+}
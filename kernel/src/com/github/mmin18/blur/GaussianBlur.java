@@ -0,0 +1,229 @@
+package com.github.mmin18.blur;
+
+import java.util.Arrays;
+
+/**
+ * Separable gaussian blur with 2 * radius + 1 taps and the same sigma ScriptIntrinsicBlur
+ * uses (0.4 * radius + 0.6). Weights are 14-bit fixed point and add up to exactly 1.
+ * <p>
+ * Both passes loop over the taps outside and over a whole row inside, adding each channel
+ * into its own accumulator array. The inner loops are straight array arithmetic without
+ * branches or loop-carried dependencies, so C2 auto-vectorizes them. C2 gives up when the
+ * arrays are indexed with different offsets, so the pixels of each tap are copied to the
+ * start of a line buffer first (System.arraycopy() is an intrinsic). Edges are clamped by
+ * padding the row (horizontal pass) or clamping the row index (vertical pass).
+ * <p>
+ * The radius may be fractional, it is rounded to a quarter pixel and the weights come from
+ * GaussianKernelCache.
+ */
+public final class GaussianBlur implements BlurKernel {
+	static final int SHIFT = 14;
+	private static final int HALF = 1 << (SHIFT - 1);
+
+	private final boolean mPremultiplied;
+	private float mRadius = -1;
+	private int[] mWeights;
+	private int[] mInput, mScratch, mRow, mLine;
+	private int[] mAcc0, mAcc1, mAcc2, mAcc3;
+
+	/**
+	 * @param premultiplied false if the pixels are ARGB colors (not premultiplied by alpha),
+	 *                      they are premultiplied before the blur and restored after it
+	 */
+	public GaussianBlur(boolean premultiplied) {
+		mPremultiplied = premultiplied;
+	}
+
+	/**
+	 * @return 2 * radius + 1 weights in 14-bit fixed point, adding up to 1 << 14
+	 */
+	public static int[] createWeights(int radius) {
+		return createWeights((float) radius);
+	}
+
+	/**
+	 * @return 2 * ceil(radius) + 1 weights in 14-bit fixed point, adding up to 1 << 14
+	 */
+	public static int[] createWeights(float radius) {
+		radius = Math.max(0, radius);
+		final int taps = (int) Math.ceil(radius);
+		final double sigma = 0.4 * radius + 0.6;
+		final double[] g = new double[2 * taps + 1];
+		double sum = 0;
+		for (int i = -taps; i <= taps; i++) {
+			g[i + taps] = Math.exp(-i * i / (2 * sigma * sigma));
+			sum += g[i + taps];
+		}
+		int[] weights = new int[g.length];
+		int total = 0;
+		for (int i = 0; i < g.length; i++) {
+			weights[i] = (int) Math.round(g[i] / sum * (1 << SHIFT));
+			total += weights[i];
+		}
+		// rounding error goes to the center
+		weights[taps] += (1 << SHIFT) - total;
+		return weights;
+	}
+
+	@Override
+	public void blur(int[] src, int[] dst, int width, int height, int radius) {
+		blur(src, dst, width, height, (float) radius);
+	}
+
+	public void blur(int[] src, int[] dst, int width, int height, float radius) {
+		final int taps = prepare(width, height, radius);
+		final int size = width * height;
+
+		int[] in = src;
+		if (!mPremultiplied) {
+			if (mInput == null || mInput.length < size) {
+				mInput = new int[size];
+			}
+			Pixels.premultiply(src, mInput, size);
+			in = mInput;
+		}
+
+		final int[] weights = mWeights;
+		final int[] row = mRow;
+		for (int y = 0; y < height; y++) {
+			int offset = y * width;
+			Arrays.fill(row, 0, taps, in[offset]);
+			System.arraycopy(in, offset, row, taps, width);
+			Arrays.fill(row, taps + width, width + 2 * taps, in[offset + width - 1]);
+			clear(width);
+			for (int k = 0; k < weights.length; k++) {
+				System.arraycopy(row, k, mLine, 0, width);
+				accumulate(weights[k], width);
+			}
+			pack(width);
+			System.arraycopy(mLine, 0, mScratch, offset, width);
+		}
+
+		final int last = height - 1;
+		for (int y = 0; y < height; y++) {
+			clear(width);
+			for (int k = 0; k < weights.length; k++) {
+				int sy = y + k - taps;
+				sy = sy < 0 ? 0 : (sy > last ? last : sy);
+				System.arraycopy(mScratch, sy * width, mLine, 0, width);
+				accumulate(weights[k], width);
+			}
+			pack(width);
+			System.arraycopy(mLine, 0, dst, y * width, width);
+		}
+
+		if (!mPremultiplied) {
+			Pixels.unpremultiply(dst, dst, size);
+		}
+	}
+
+	/**
+	 * Single channel variant, for ALPHA_8 pixels or a plane of a planar image
+	 *
+	 * @param src width * height, not modified
+	 * @param dst width * height, must not be the same array as src
+	 */
+	public void blur(byte[] src, byte[] dst, int width, int height, float radius) {
+		final int taps = prepare(width, height, radius);
+
+		final int[] weights = mWeights;
+		final int[] row = mRow;
+		final int[] acc = mAcc0;
+		final int[] line = mLine;
+		for (int y = 0; y < height; y++) {
+			int offset = y * width;
+			Arrays.fill(row, 0, taps, src[offset] & 0xff);
+			for (int x = 0; x < width; x++) {
+				row[taps + x] = src[offset + x] & 0xff;
+			}
+			Arrays.fill(row, taps + width, width + 2 * taps, src[offset + width - 1] & 0xff);
+			Arrays.fill(acc, 0, width, 0);
+			for (int k = 0; k < weights.length; k++) {
+				System.arraycopy(row, k, line, 0, width);
+				final int w = weights[k];
+				for (int x = 0; x < width; x++) {
+					acc[x] += w * line[x];
+				}
+			}
+			for (int x = 0; x < width; x++) {
+				line[x] = (acc[x] + HALF) >>> SHIFT;
+			}
+			System.arraycopy(line, 0, mScratch, offset, width);
+		}
+
+		final int last = height - 1;
+		for (int y = 0; y < height; y++) {
+			Arrays.fill(acc, 0, width, 0);
+			for (int k = 0; k < weights.length; k++) {
+				int sy = y + k - taps;
+				sy = sy < 0 ? 0 : (sy > last ? last : sy);
+				System.arraycopy(mScratch, sy * width, line, 0, width);
+				final int w = weights[k];
+				for (int x = 0; x < width; x++) {
+					acc[x] += w * line[x];
+				}
+			}
+			final int offset = y * width;
+			for (int x = 0; x < width; x++) {
+				dst[offset + x] = (byte) ((acc[x] + HALF) >>> SHIFT);
+			}
+		}
+	}
+
+	/**
+	 * @return taps on each side of the center
+	 */
+	private int prepare(int width, int height, float radius) {
+		radius = GaussianKernelCache.quantize(radius);
+		if (mRadius != radius) {
+			mWeights = GaussianKernelCache.get(radius);
+			mRadius = radius;
+		}
+		final int taps = mWeights.length / 2;
+		if (mScratch == null || mScratch.length < width * height) {
+			mScratch = new int[width * height];
+		}
+		if (mAcc0 == null || mAcc0.length < width) {
+			mLine = new int[width];
+			mAcc0 = new int[width];
+			mAcc1 = new int[width];
+			mAcc2 = new int[width];
+			mAcc3 = new int[width];
+		}
+		if (mRow == null || mRow.length < width + 2 * taps) {
+			mRow = new int[width + 2 * taps];
+		}
+		return taps;
+	}
+
+	private void clear(int count) {
+		Arrays.fill(mAcc0, 0, count, 0);
+		Arrays.fill(mAcc1, 0, count, 0);
+		Arrays.fill(mAcc2, 0, count, 0);
+		Arrays.fill(mAcc3, 0, count, 0);
+	}
+
+	private void accumulate(int weight, int count) {
+		final int[] line = mLine;
+		final int[] a0 = mAcc0, a1 = mAcc1, a2 = mAcc2, a3 = mAcc3;
+		for (int x = 0; x < count; x++) {
+			int p = line[x];
+			a0[x] += weight * (p & 0xff);
+			a1[x] += weight * ((p >>> 8) & 0xff);
+			a2[x] += weight * ((p >>> 16) & 0xff);
+			a3[x] += weight * (p >>> 24);
+		}
+	}
+
+	/**
+	 * Into mLine
+	 */
+	private void pack(int count) {
+		final int[] line = mLine;
+		final int[] a0 = mAcc0, a1 = mAcc1, a2 = mAcc2, a3 = mAcc3;
+		for (int x = 0; x < count; x++) {
+			line[x] = ((a3[x] + HALF) >>> SHIFT) << 24 | ((a2[x] + HALF) >>> SHIFT) << 16
+					| ((a1[x] + HALF) >>> SHIFT) << 8 | ((a0[x] + HALF) >>> SHIFT);
+		}
+	}
+}
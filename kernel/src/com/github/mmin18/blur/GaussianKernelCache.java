@@ -0,0 +1,92 @@
+package com.github.mmin18.blur;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used GaussianBlur weights, keyed by the radius rounded to a quarter pixel.
+ * An animated radius goes through the same few values again and again (each way of the
+ * animation, and every blur view with the same radius), so changing it is a lookup
+ * instead of computing the exp() of every tap.
+ * <p>
+ * Shared by all GaussianBlur instances, thread safe.
+ */
+public final class GaussianKernelCache {
+	// radius is rounded to 1 / STEPS pixel
+	public static final int STEPS = 4;
+	// every quarter pixel up to radius 32, each table is at most a few hundred bytes
+	public static final int DEFAULT_MAX_SIZE = 128;
+
+	private static int sMaxSize = DEFAULT_MAX_SIZE;
+	private static int sHits, sMisses;
+	private static final LinkedHashMap<Integer, int[]> CACHE = new LinkedHashMap<Integer, int[]>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+			return size() > sMaxSize;
+		}
+	};
+
+	private GaussianKernelCache() {
+	}
+
+	/**
+	 * @return the radius the weights of get() are for
+	 */
+	public static float quantize(float radius) {
+		return Math.round(Math.max(0, radius) * STEPS) / (float) STEPS;
+	}
+
+	/**
+	 * @return GaussianBlur.createWeights() of the quantized radius, shared so don't modify it
+	 */
+	public static synchronized int[] get(float radius) {
+		final int key = Math.round(Math.max(0, radius) * STEPS);
+		int[] weights = CACHE.get(key);
+		if (weights == null) {
+			sMisses++;
+			weights = GaussianBlur.createWeights(key / (float) STEPS);
+			CACHE.put(key, weights);
+		} else {
+			sHits++;
+		}
+		return weights;
+	}
+
+	/**
+	 * @param size weight tables kept, 0 to disable the cache
+	 */
+	public static synchronized void setMaxSize(int size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("Size must not be negative.");
+		}
+		sMaxSize = size;
+		if (CACHE.size() > size) {
+			// drop the least recently used ones
+			int remove = CACHE.size() - size;
+			Iterator<Integer> it = CACHE.keySet().iterator();
+			while (remove-- > 0) {
+				it.next();
+				it.remove();
+			}
+		}
+	}
+
+	public static synchronized int getMaxSize() {
+		return sMaxSize;
+	}
+
+	public static synchronized int getHitCount() {
+		return sHits;
+	}
+
+	public static synchronized int getMissCount() {
+		return sMisses;
+	}
+
+	public static synchronized void clear() {
+		CACHE.clear();
+		sHits = 0;
+		sMisses = 0;
+	}
+}
@@ -0,0 +1,121 @@
+package com.github.mmin18.blur;
+
+/**
+ * Conversions between ARGB colors and premultiplied pixels. Blurring has to be done on
+ * premultiplied pixels, otherwise colors of transparent pixels bleed into their neighbors.
+ * <p>
+ * Also between the packed 32-bit pixels the kernels work on and the 16-bit RGB_565 or
+ * 8-bit ALPHA_8 layouts, with a row stride since bitmap rows may be padded.
+ */
+public final class Pixels {
+	// 255 / alpha in 16.16 fixed point
+	private static final int[] UNPREMULTIPLY = new int[256];
+
+	static {
+		for (int a = 1; a < 256; a++) {
+			UNPREMULTIPLY[a] = ((255 << 16) + a / 2) / a;
+		}
+	}
+
+	private Pixels() {
+	}
+
+	/**
+	 * src and dst may be the same array. No branch in the loop, C2 vectorizes it.
+	 */
+	public static void premultiply(int[] src, int[] dst, int count) {
+		for (int i = 0; i < count; i++) {
+			int p = src[i];
+			int a = p >>> 24;
+			// c * a / 255, rounded
+			int c0 = (p & 0xff) * a + 128;
+			int c1 = ((p >>> 8) & 0xff) * a + 128;
+			int c2 = ((p >>> 16) & 0xff) * a + 128;
+			c0 = (c0 + (c0 >>> 8)) >>> 8;
+			c1 = (c1 + (c1 >>> 8)) >>> 8;
+			c2 = (c2 + (c2 >>> 8)) >>> 8;
+			dst[i] = (p & 0xff000000) | c2 << 16 | c1 << 8 | c0;
+		}
+	}
+
+	/**
+	 * src and dst may be the same array
+	 */
+	public static void unpremultiply(int[] src, int[] dst, int count) {
+		for (int i = 0; i < count; i++) {
+			int p = src[i];
+			int m = UNPREMULTIPLY[p >>> 24];
+			int c0 = Math.min(255, ((p & 0xff) * m + 0x8000) >>> 16);
+			int c1 = Math.min(255, (((p >>> 8) & 0xff) * m + 0x8000) >>> 16);
+			int c2 = Math.min(255, (((p >>> 16) & 0xff) * m + 0x8000) >>> 16);
+			dst[i] = (p & 0xff000000) | c2 << 16 | c1 << 8 | c0;
+		}
+	}
+
+	/**
+	 * RGB_565 to opaque 32-bit pixels, each channel is widened by repeating its high bits
+	 *
+	 * @param stride shorts per row in src
+	 */
+	public static void expandRgb565(short[] src, int stride, int[] dst, int width, int height) {
+		for (int y = 0; y < height; y++) {
+			int s = y * stride;
+			int d = y * width;
+			for (int x = 0; x < width; x++) {
+				int p = src[s + x] & 0xffff;
+				int r = p >>> 11;
+				int g = (p >>> 5) & 0x3f;
+				int b = p & 0x1f;
+				dst[d + x] = 0xff000000 | (r << 3 | r >>> 2) << 16 | (g << 2 | g >>> 4) << 8 | (b << 3 | b >>> 2);
+			}
+		}
+	}
+
+	/**
+	 * 32-bit pixels to RGB_565, rounded, alpha is dropped
+	 *
+	 * @param stride shorts per row in dst
+	 */
+	public static void packRgb565(int[] src, short[] dst, int stride, int width, int height) {
+		for (int y = 0; y < height; y++) {
+			int s = y * width;
+			int d = y * stride;
+			for (int x = 0; x < width; x++) {
+				int p = src[s + x];
+				// round(c * 31 / 255) and round(c * 63 / 255)
+				int r = (((p >>> 16) & 0xff) * 249 + 1014) >>> 11;
+				int g = (((p >>> 8) & 0xff) * 253 + 505) >>> 10;
+				int b = ((p & 0xff) * 249 + 1014) >>> 11;
+				dst[d + x] = (short) (r << 11 | g << 5 | b);
+			}
+		}
+	}
+
+	/**
+	 * ALPHA_8 to 32-bit pixels with only the alpha byte set
+	 *
+	 * @param stride bytes per row in src
+	 */
+	public static void expandAlpha8(byte[] src, int stride, int[] dst, int width, int height) {
+		for (int y = 0; y < height; y++) {
+			int s = y * stride;
+			int d = y * width;
+			for (int x = 0; x < width; x++) {
+				dst[d + x] = src[s + x] << 24;
+			}
+		}
+	}
+
+	/**
+	 * @param stride bytes per row in dst
+	 */
+	public static void packAlpha8(int[] src, byte[] dst, int stride, int width, int height) {
+		for (int y = 0; y < height; y++) {
+			int s = y * width;
+			int d = y * stride;
+			for (int x = 0; x < width; x++) {
+				dst[d + x] = (byte) (src[s + x] >>> 24);
+			}
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.github.mmin18.blur;
+
+/**
+ * Blur with any radius: halve the pixels until the radius fits in StackBlur.MAX_RADIUS,
+ * blur the smallest level, and scale it back up level by level with bilinear filtering.
+ * Each level has a quarter of the pixels of the one above, so the cost stays close to a
+ * single blur of the full size no matter how large the radius is.
+ * <p>
+ * The radius at the smallest level is picked so the total sigma (halving, blurring and
+ * upsampling added up) matches 0.4 * radius + 0.6, the same as a plain blur of that radius.
+ * <p>
+ * Works on packed 32-bit pixels, all 4 bytes are filtered separately.
+ */
+public final class PyramidBlur {
+
+	private PyramidBlur() {
+	}
+
+	/**
+	 * @return how many times to halve so the radius fits StackBlur.MAX_RADIUS
+	 */
+	public static int getLevels(float radius) {
+		int levels = 0;
+		while (radius > StackBlur.MAX_RADIUS) {
+			radius /= 2;
+			levels++;
+		}
+		return levels;
+	}
+
+	/**
+	 * @return size of the given level, rounded up so edge pixels are not lost
+	 */
+	public static int getLevelSize(int size, int level) {
+		for (int i = 0; i < level; i++) {
+			size = (size + 1) / 2;
+		}
+		return size;
+	}
+
+	/**
+	 * @return stack blur radius at the smallest level
+	 */
+	public static int getLevelRadius(float radius, int levels) {
+		double sigma = 0.4 * radius + 0.6;
+		double scale = 1 << (2 * levels); // 4^levels
+		// halving a level adds 0.25 px^2 and the bilinear upsampling 0.75 px^2 of its own pixels
+		double variance = (sigma * sigma - (scale - 1) / 3) / scale;
+		if (variance <= 0.36) {
+			return 0;
+		}
+		int r = (int) Math.round((Math.sqrt(variance) - 0.6) / 0.4);
+		return Math.max(0, Math.min(StackBlur.MAX_RADIUS, r));
+	}
+
+	/**
+	 * Average 2x2 blocks of src (width x height) into dst ((width + 1) / 2 x (height + 1) / 2)
+	 */
+	public static void downsample(int[] src, int width, int height, int[] dst) {
+		final int dw = (width + 1) / 2;
+		final int dh = (height + 1) / 2;
+		for (int y = 0; y < dh; y++) {
+			int row0 = 2 * y * width;
+			int row1 = Math.min(2 * y + 1, height - 1) * width;
+			int d = y * dw;
+			for (int x = 0; x < dw; x++) {
+				int x0 = 2 * x;
+				int x1 = Math.min(x0 + 1, width - 1);
+				int p0 = src[row0 + x0], p1 = src[row0 + x1], p2 = src[row1 + x0], p3 = src[row1 + x1];
+				// two channels in each 16-bit lane, 4 * 255 doesn't overflow
+				int rb = (p0 & 0xff00ff) + (p1 & 0xff00ff) + (p2 & 0xff00ff) + (p3 & 0xff00ff) + 0x20002;
+				int ag = ((p0 >>> 8) & 0xff00ff) + ((p1 >>> 8) & 0xff00ff)
+						+ ((p2 >>> 8) & 0xff00ff) + ((p3 >>> 8) & 0xff00ff) + 0x20002;
+				dst[d + x] = ((ag >>> 2) & 0xff00ff) << 8 | ((rb >>> 2) & 0xff00ff);
+			}
+		}
+	}
+
+	/**
+	 * Bilinear upsampling of src ((width + 1) / 2 x (height + 1) / 2) into dst (width x height),
+	 * each destination pixel is 9:3:3:1 of its 4 nearest source pixels
+	 */
+	public static void upsample(int[] src, int[] dst, int width, int height) {
+		final int sw = (width + 1) / 2;
+		final int sh = (height + 1) / 2;
+		for (int y = 0; y < height; y++) {
+			int sy = y >> 1;
+			// even rows lean on the row above, odd rows on the row below
+			int ny = (y & 1) == 0 ? Math.max(0, sy - 1) : Math.min(sh - 1, sy + 1);
+			int row = sy * sw;
+			int nrow = ny * sw;
+			int d = y * width;
+			for (int x = 0; x < width; x++) {
+				int sx = x >> 1;
+				int nx = (x & 1) == 0 ? Math.max(0, sx - 1) : Math.min(sw - 1, sx + 1);
+				int p0 = src[row + sx], p1 = src[row + nx], p2 = src[nrow + sx], p3 = src[nrow + nx];
+				// 16 * 255 doesn't overflow a 16-bit lane
+				int rb = 9 * (p0 & 0xff00ff) + 3 * (p1 & 0xff00ff) + 3 * (p2 & 0xff00ff) + (p3 & 0xff00ff) + 0x80008;
+				int ag = 9 * ((p0 >>> 8) & 0xff00ff) + 3 * ((p1 >>> 8) & 0xff00ff)
+						+ 3 * ((p2 >>> 8) & 0xff00ff) + ((p3 >>> 8) & 0xff00ff) + 0x80008;
+				dst[d + x] = ((ag >>> 4) & 0xff00ff) << 8 | ((rb >>> 4) & 0xff00ff);
+			}
+		}
+	}
+}
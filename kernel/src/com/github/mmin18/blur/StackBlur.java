@@ -0,0 +1,175 @@
+package com.github.mmin18.blur;
+
+/**
+ * Stack blur on packed 32-bit pixels, the kernel is a triangle of radius + 1 which
+ * is close enough to a gaussian. With the same radius its sigma matches the one
+ * ScriptIntrinsicBlur uses (0.4 * radius + 0.6), so the result looks the same.
+ * <p>
+ * All 4 bytes of a pixel are blurred separately, which is right for premultiplied
+ * pixels like the raw ones from Bitmap.copyPixelsToBuffer(). The sliding window is
+ * serial along a line, so unlike GaussianBlur and BoxBlur it doesn't vectorize.
+ */
+public final class StackBlur implements BlurKernel {
+
+	public static final int MAX_RADIUS = 25;
+
+	private final boolean mPremultiplied;
+	private int[] mInput, mScratch;
+	private final int[] mStack = new int[2 * MAX_RADIUS + 1];
+
+	/**
+	 * @param premultiplied false if the pixels are ARGB colors (not premultiplied by alpha),
+	 *                      they are premultiplied before the blur and restored after it
+	 */
+	public StackBlur(boolean premultiplied) {
+		mPremultiplied = premultiplied;
+	}
+
+	/**
+	 * @param radius clamped to [0, MAX_RADIUS]
+	 */
+	@Override
+	public void blur(int[] src, int[] dst, int width, int height, int radius) {
+		radius = Math.max(0, Math.min(MAX_RADIUS, radius));
+		final int size = width * height;
+		if (mScratch == null || mScratch.length < size) {
+			mScratch = new int[size];
+		}
+		int[] in = src;
+		if (!mPremultiplied) {
+			if (mInput == null || mInput.length < size) {
+				mInput = new int[size];
+			}
+			Pixels.premultiply(src, mInput, size);
+			in = mInput;
+		}
+		blurRows(in, mScratch, width, radius, 0, height, 0, width, mStack);
+		blurColumns(mScratch, dst, width, height, radius, 0, width, 0, height, mStack);
+		if (!mPremultiplied) {
+			Pixels.unpremultiply(dst, dst, size);
+		}
+	}
+
+	/**
+	 * Blur pixels [from, to) of a line, pixels outside the line are clamped to its edge.
+	 *
+	 * @param src    source pixels
+	 * @param dst    destination pixels, must not be the same array as src
+	 * @param offset index of the first pixel of the line
+	 * @param stride distance between two pixels in the line (1 for a row, width for a column)
+	 * @param length pixel count of the line
+	 * @param from   first pixel to write
+	 * @param to     last pixel to write (exclusive)
+	 * @param radius blur radius
+	 * @param stack  scratch buffer, at least 2 * radius + 1 long
+	 */
+	public static void blurLine(int[] src, int[] dst, int offset, int stride, int length,
+						 int from, int to, int radius, int[] stack) {
+		if (from >= to) {
+			return;
+		}
+		final int div = radius + radius + 1;
+		final int divSum = (radius + 1) * (radius + 1);
+		final int last = length - 1;
+
+		int sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+		int in0 = 0, in1 = 0, in2 = 0, in3 = 0;
+		int out0 = 0, out1 = 0, out2 = 0, out3 = 0;
+		for (int i = -radius; i <= radius; i++) {
+			int p = src[offset + clamp(from + i, last) * stride];
+			stack[i + radius] = p;
+			int c0 = p & 0xff, c1 = (p >>> 8) & 0xff, c2 = (p >>> 16) & 0xff, c3 = p >>> 24;
+			int weight = radius + 1 - (i < 0 ? -i : i);
+			sum0 += c0 * weight;
+			sum1 += c1 * weight;
+			sum2 += c2 * weight;
+			sum3 += c3 * weight;
+			if (i <= 0) {
+				out0 += c0;
+				out1 += c1;
+				out2 += c2;
+				out3 += c3;
+			} else {
+				in0 += c0;
+				in1 += c1;
+				in2 += c2;
+				in3 += c3;
+			}
+		}
+
+		int sp = radius;
+		int index = offset + from * stride;
+		for (int x = from; x < to; x++) {
+			dst[index] = (sum3 / divSum) << 24 | (sum2 / divSum) << 16 | (sum1 / divSum) << 8 | (sum0 / divSum);
+			index += stride;
+
+			sum0 -= out0;
+			sum1 -= out1;
+			sum2 -= out2;
+			sum3 -= out3;
+
+			// the oldest pixel (x - radius) leaves the stack
+			int start = sp + radius + 1;
+			if (start >= div) {
+				start -= div;
+			}
+			int p = stack[start];
+			out0 -= p & 0xff;
+			out1 -= (p >>> 8) & 0xff;
+			out2 -= (p >>> 16) & 0xff;
+			out3 -= p >>> 24;
+
+			// and pixel (x + radius + 1) takes its place
+			p = src[offset + clamp(x + radius + 1, last) * stride];
+			stack[start] = p;
+			in0 += p & 0xff;
+			in1 += (p >>> 8) & 0xff;
+			in2 += (p >>> 16) & 0xff;
+			in3 += p >>> 24;
+
+			sum0 += in0;
+			sum1 += in1;
+			sum2 += in2;
+			sum3 += in3;
+
+			// the new center pixel moves from the incoming half to the outgoing half
+			if (++sp >= div) {
+				sp = 0;
+			}
+			p = stack[sp];
+			int c0 = p & 0xff, c1 = (p >>> 8) & 0xff, c2 = (p >>> 16) & 0xff, c3 = p >>> 24;
+			out0 += c0;
+			out1 += c1;
+			out2 += c2;
+			out3 += c3;
+			in0 -= c0;
+			in1 -= c1;
+			in2 -= c2;
+			in3 -= c3;
+		}
+	}
+
+	/**
+	 * Horizontal pass on rows [top, bottom), only pixels in columns [left, right) are written
+	 */
+	public static void blurRows(int[] src, int[] dst, int width, int radius,
+						 int top, int bottom, int left, int right, int[] stack) {
+		for (int y = top; y < bottom; y++) {
+			blurLine(src, dst, y * width, 1, width, left, right, radius, stack);
+		}
+	}
+
+	/**
+	 * Vertical pass on columns [left, right), only pixels in rows [top, bottom) are written
+	 */
+	public static void blurColumns(int[] src, int[] dst, int width, int height, int radius,
+							int left, int right, int top, int bottom, int[] stack) {
+		for (int x = left; x < right; x++) {
+			blurLine(src, dst, x, width, height, top, bottom, radius, stack);
+		}
+	}
+
+	private static int clamp(int i, int last) {
+		return i < 0 ? 0 : (i > last ? last : i);
+	}
+}
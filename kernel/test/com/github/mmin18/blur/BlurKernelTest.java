@@ -0,0 +1,295 @@
+package com.github.mmin18.blur;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The kernels against a reference blur in double precision, with the same edge clamping
+ */
+public class BlurKernelTest {
+	private static final int WIDTH = 97;
+	private static final int HEIGHT = 61;
+
+	@Test
+	public void gaussianMatchesReference() {
+		int[] src = testPixels(WIDTH, HEIGHT);
+		for (int radius : new int[]{1, 2, 5, 10, 25}) {
+			int[] dst = new int[src.length];
+			new GaussianBlur(true).blur(src, dst, WIDTH, HEIGHT, radius);
+			int[] expected = reference(src, WIDTH, HEIGHT, gaussian(radius));
+			// 14-bit weights, rounded after each pass
+			assertMaxError("gaussian r=" + radius, expected, dst, 1);
+		}
+	}
+
+	@Test
+	public void fractionalGaussianMatchesReference() {
+		int[] src = testPixels(WIDTH, HEIGHT);
+		for (float radius : new float[]{0.5f, 2.25f, 7.75f}) {
+			int[] dst = new int[src.length];
+			new GaussianBlur(true).blur(src, dst, WIDTH, HEIGHT, radius);
+			int[] expected = reference(src, WIDTH, HEIGHT, gaussian(radius));
+			assertMaxError("gaussian r=" + radius, expected, dst, 1);
+		}
+	}
+
+	@Test
+	public void boxMatchesReference() {
+		int[] src = testPixels(WIDTH, HEIGHT);
+		for (int radius : new int[]{1, 3, 10, 25}) {
+			int[] dst = new int[src.length];
+			new BoxBlur(true).blur(src, dst, WIDTH, HEIGHT, radius);
+			double[] box = new double[2 * radius + 1];
+			Arrays.fill(box, 1.0 / box.length);
+			int[] expected = reference(src, WIDTH, HEIGHT, box);
+			assertMaxError("box r=" + radius, expected, dst, 1);
+		}
+	}
+
+	@Test
+	public void stackMatchesTriangleReference() {
+		int[] src = testPixels(WIDTH, HEIGHT);
+		for (int radius : new int[]{1, 4, 12, 25}) {
+			int[] dst = new int[src.length];
+			new StackBlur(true).blur(src, dst, WIDTH, HEIGHT, radius);
+			int[] expected = reference(src, WIDTH, HEIGHT, triangle(radius));
+			// truncated instead of rounded after each pass
+			assertMaxError("stack r=" + radius, expected, dst, 2);
+		}
+	}
+
+	@Test
+	public void stackIsCloseToGaussian() {
+		int[] src = testPixels(WIDTH, HEIGHT);
+		for (int radius : new int[]{4, 12, 25}) {
+			int[] dst = new int[src.length];
+			new StackBlur(true).blur(src, dst, WIDTH, HEIGHT, radius);
+			int[] expected = reference(src, WIDTH, HEIGHT, gaussian(radius));
+			// a triangle is not a gaussian, but on average it looks the same
+			double error = meanError(expected, dst);
+			assertTrue("stack r=" + radius + " mean error " + error, error < 2);
+		}
+	}
+
+	@Test
+	public void unpremultipliedOpaqueIsTheSame() {
+		int[] src = testPixels(WIDTH, HEIGHT);
+		BlurKernel[][] kernels = {
+				{new GaussianBlur(true), new GaussianBlur(false)},
+				{new BoxBlur(true), new BoxBlur(false)},
+				{new StackBlur(true), new StackBlur(false)},
+		};
+		for (BlurKernel[] pair : kernels) {
+			int[] premultiplied = new int[src.length];
+			int[] colors = new int[src.length];
+			pair[0].blur(src, premultiplied, WIDTH, HEIGHT, 6);
+			pair[1].blur(src, colors, WIDTH, HEIGHT, 6);
+			assertMaxError(pair[0].getClass().getSimpleName(), premultiplied, colors, 0);
+		}
+	}
+
+	@Test
+	public void blurLineSubRange() {
+		final int length = 80;
+		final int radius = 7;
+		int[] src = testPixels(length, 1);
+		int[] stack = new int[2 * radius + 1];
+		int[] whole = new int[length];
+		StackBlur.blurLine(src, whole, 0, 1, length, 0, length, radius, stack);
+
+		for (int[] range : new int[][]{{0, 10}, {20, 45}, {70, 80}, {33, 34}, {50, 50}}) {
+			int[] dst = new int[length];
+			Arrays.fill(dst, 0x12345678);
+			StackBlur.blurLine(src, dst, 0, 1, length, range[0], range[1], radius, stack);
+			for (int i = 0; i < length; i++) {
+				if (i >= range[0] && i < range[1]) {
+					assertEquals("pixel " + i + " of " + Arrays.toString(range), whole[i], dst[i]);
+				} else {
+					assertEquals("pixel " + i + " outside " + Arrays.toString(range), 0x12345678, dst[i]);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void blurLineWithStride() {
+		// a column in the middle of an image is the same as the column on its own
+		final int radius = 5;
+		int[] src = testPixels(WIDTH, HEIGHT);
+		int[] column = new int[HEIGHT];
+		for (int y = 0; y < HEIGHT; y++) {
+			column[y] = src[y * WIDTH + 40];
+		}
+		int[] stack = new int[2 * radius + 1];
+		int[] expected = new int[HEIGHT];
+		StackBlur.blurLine(column, expected, 0, 1, HEIGHT, 0, HEIGHT, radius, stack);
+		int[] dst = new int[src.length];
+		StackBlur.blurLine(src, dst, 40, WIDTH, HEIGHT, 10, 50, radius, stack);
+		for (int y = 10; y < 50; y++) {
+			assertEquals("row " + y, expected[y], dst[y * WIDTH + 40]);
+		}
+	}
+
+	@Test
+	public void regionReblurMatchesWholeBlur() {
+		// like StackBlurImpl with a changed rect: the passes run again only around the change,
+		// on the buffers of the last frame
+		Random random = new Random(5);
+		for (int radius : new int[]{1, 3, 9, 25}) {
+			int[] src = testPixels(WIDTH, HEIGHT);
+			int[] stack = new int[2 * radius + 1];
+			int[] scratch = new int[src.length];
+			int[] dst = new int[src.length];
+			StackBlur.blurRows(src, scratch, WIDTH, radius, 0, HEIGHT, 0, WIDTH, stack);
+			StackBlur.blurColumns(scratch, dst, WIDTH, HEIGHT, radius, 0, WIDTH, 0, HEIGHT, stack);
+
+			for (int frame = 0; frame < 40; frame++) {
+				int left, top, right, bottom;
+				if (frame < 4) {
+					// at each edge
+					left = frame == 0 ? 0 : random.nextInt(WIDTH - 1);
+					top = frame == 1 ? 0 : random.nextInt(HEIGHT - 1);
+					right = frame == 2 ? WIDTH : left + 1 + random.nextInt(WIDTH - left);
+					bottom = frame == 3 ? HEIGHT : top + 1 + random.nextInt(HEIGHT - top);
+				} else if (frame < 20) {
+					// smaller than the radius
+					left = random.nextInt(WIDTH - 1);
+					top = random.nextInt(HEIGHT - 1);
+					right = Math.min(WIDTH, left + 1 + random.nextInt(Math.max(1, radius - 1)));
+					bottom = Math.min(HEIGHT, top + 1 + random.nextInt(Math.max(1, radius - 1)));
+				} else {
+					left = random.nextInt(WIDTH - 1);
+					top = random.nextInt(HEIGHT - 1);
+					right = left + 1 + random.nextInt(WIDTH - left);
+					bottom = top + 1 + random.nextInt(HEIGHT - top);
+				}
+				for (int y = top; y < bottom; y++) {
+					for (int x = left; x < right; x++) {
+						src[y * WIDTH + x] = 0xff000000 | random.nextInt(0x1000000);
+					}
+				}
+
+				int l = Math.max(0, left - radius);
+				int r = Math.min(WIDTH, right + radius);
+				StackBlur.blurRows(src, scratch, WIDTH, radius, top, bottom, l, r, stack);
+				StackBlur.blurColumns(scratch, dst, WIDTH, HEIGHT, radius, l, r,
+						Math.max(0, top - radius), Math.min(HEIGHT, bottom + radius), stack);
+
+				int[] whole = new int[src.length];
+				new StackBlur(true).blur(src, whole, WIDTH, HEIGHT, radius);
+				String changed = "r=" + radius + " changed " + left + "," + top + "-" + right + "," + bottom;
+				for (int i = 0; i < whole.length; i++) {
+					if (whole[i] != dst[i]) {
+						assertEquals(changed + " pixel " + i % WIDTH + "," + i / WIDTH, whole[i], dst[i]);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gradients, hard edges and noise, opaque
+	 */
+	static int[] testPixels(int width, int height) {
+		Random random = new Random(42);
+		int[] pixels = new int[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int r = x * 255 / Math.max(1, width - 1);
+				int g = (x / 8 + y / 8) % 2 == 0 ? 230 : 20;
+				int b = random.nextInt(256);
+				pixels[y * width + x] = 0xff000000 | r << 16 | g << 8 | b;
+			}
+		}
+		return pixels;
+	}
+
+	static double[] gaussian(float radius) {
+		int taps = (int) Math.ceil(radius);
+		double sigma = 0.4 * radius + 0.6;
+		double[] kernel = new double[2 * taps + 1];
+		double sum = 0;
+		for (int i = -taps; i <= taps; i++) {
+			kernel[i + taps] = Math.exp(-i * i / (2 * sigma * sigma));
+			sum += kernel[i + taps];
+		}
+		for (int i = 0; i < kernel.length; i++) {
+			kernel[i] /= sum;
+		}
+		return kernel;
+	}
+
+	static double[] triangle(int radius) {
+		double[] kernel = new double[2 * radius + 1];
+		double sum = (radius + 1) * (radius + 1);
+		for (int i = -radius; i <= radius; i++) {
+			kernel[i + radius] = (radius + 1 - Math.abs(i)) / sum;
+		}
+		return kernel;
+	}
+
+	/**
+	 * Separable blur of each channel in double precision, edges clamped
+	 */
+	static int[] reference(int[] src, int width, int height, double[] kernel) {
+		final int taps = kernel.length / 2;
+		double[][] rows = new double[4][width * height];
+		for (int c = 0; c < 4; c++) {
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					double sum = 0;
+					for (int k = -taps; k <= taps; k++) {
+						int sx = Math.max(0, Math.min(width - 1, x + k));
+						sum += kernel[k + taps] * ((src[y * width + sx] >>> (c * 8)) & 0xff);
+					}
+					rows[c][y * width + x] = sum;
+				}
+			}
+		}
+		int[] dst = new int[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int p = 0;
+				for (int c = 0; c < 4; c++) {
+					double sum = 0;
+					for (int k = -taps; k <= taps; k++) {
+						int sy = Math.max(0, Math.min(height - 1, y + k));
+						sum += kernel[k + taps] * rows[c][sy * width + x];
+					}
+					p |= Math.max(0, Math.min(255, (int) Math.round(sum))) << (c * 8);
+				}
+				dst[y * width + x] = p;
+			}
+		}
+		return dst;
+	}
+
+	static void assertMaxError(String message, int[] expected, int[] actual, int max) {
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			for (int c = 0; c < 32; c += 8) {
+				int e = (expected[i] >>> c) & 0xff;
+				int a = (actual[i] >>> c) & 0xff;
+				if (Math.abs(e - a) > max) {
+					throw new AssertionError(message + ": pixel " + i + " channel " + c / 8
+							+ " expected " + e + " but was " + a);
+				}
+			}
+		}
+	}
+
+	static double meanError(int[] expected, int[] actual) {
+		long sum = 0;
+		for (int i = 0; i < expected.length; i++) {
+			for (int c = 0; c < 32; c += 8) {
+				sum += Math.abs(((expected[i] >>> c) & 0xff) - ((actual[i] >>> c) & 0xff));
+			}
+		}
+		return (double) sum / (expected.length * 4);
+	}
+}
@@ -0,0 +1,93 @@
+package com.github.mmin18.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.lang.reflect.Field;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Animating the radius must not create allocations, like the radius seek bar of the sample
+ */
+@RunWith(AndroidJUnit4.class)
+public class BlurImplAllocationTest {
+	private static final int FRAMES = 1000;
+
+	@Test
+	public void stockReusesAllocations() throws Exception {
+		assumeTrue(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1);
+		animateRadius(new AndroidStockBlurImpl());
+	}
+
+	@Test
+	public void androidXReusesAllocations() throws Exception {
+		// only with android.useAndroidX and renderscriptSupportModeEnabled
+		assumeTrue(hasClass("androidx.renderscript.RenderScript"));
+		animateRadius(new AndroidXBlurImpl());
+	}
+
+	@Test
+	public void supportLibraryReusesAllocations() throws Exception {
+		// only with renderscriptSupportModeEnabled
+		assumeTrue(hasClass("android.support.v8.renderscript.RenderScript"));
+		animateRadius(new SupportLibraryBlurImpl());
+	}
+
+	private static void animateRadius(BlurImpl impl) throws Exception {
+		final Context context = InstrumentationRegistry.getTargetContext();
+		Bitmap input = Bitmap.createBitmap(90, 160, Bitmap.Config.ARGB_8888);
+		Bitmap output = Bitmap.createBitmap(90, 160, Bitmap.Config.ARGB_8888);
+		try {
+			assumeTrue(impl.prepare(context, input, 1));
+			impl.blur(input, output);
+			Object blurInput = getField(impl, "mBlurInput");
+			Object blurOutput = getField(impl, "mBlurOutput");
+			assertNotNull(blurInput);
+			assertNotNull(blurOutput);
+
+			for (int i = 0; i < FRAMES; i++) {
+				float radius = 1 + (i % 240) / 10f;
+				assertTrue(impl.prepare(context, input, radius));
+				impl.blur(input, output);
+				assertSame("frame " + i, blurInput, getField(impl, "mBlurInput"));
+				assertSame("frame " + i, blurOutput, getField(impl, "mBlurOutput"));
+			}
+
+			// a new size replaces them
+			Bitmap resized = Bitmap.createBitmap(120, 160, Bitmap.Config.ARGB_8888);
+			assertTrue(impl.prepare(context, resized, 10));
+			assertNotSame(blurInput, getField(impl, "mBlurInput"));
+			resized.recycle();
+		} finally {
+			impl.release();
+			input.recycle();
+			output.recycle();
+		}
+	}
+
+	static Object getField(Object obj, String name) throws Exception {
+		Field field = obj.getClass().getDeclaredField(name);
+		field.setAccessible(true);
+		return field.get(obj);
+	}
+
+	static boolean hasClass(String name) {
+		try {
+			Class.forName(name);
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package com.github.mmin18.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * The shared allocations blur the same pixels as copying the bitmaps
+ */
+@RunWith(AndroidJUnit4.class)
+public class ZeroCopyBlurTest {
+	private static final String TAG = "ZeroCopyBlurTest";
+
+	@Test
+	public void stock() {
+		assumeTrue(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1);
+		compare(new AndroidStockBlurImpl(), new AndroidStockBlurImpl());
+	}
+
+	@Test
+	public void androidX() {
+		assumeTrue(BlurImplAllocationTest.hasClass("androidx.renderscript.RenderScript"));
+		compare(new AndroidXBlurImpl(), new AndroidXBlurImpl());
+	}
+
+	@Test
+	public void supportLibrary() {
+		assumeTrue(BlurImplAllocationTest.hasClass("android.support.v8.renderscript.RenderScript"));
+		compare(new SupportLibraryBlurImpl(), new SupportLibraryBlurImpl());
+	}
+
+	@Test
+	public void reconfiguredBitmaps() {
+		// BlurBitmapPool hands out the same bitmaps with a new size
+		assumeTrue(Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT);
+		final Context context = InstrumentationRegistry.getTargetContext();
+		AndroidStockBlurImpl copy = new AndroidStockBlurImpl();
+		AndroidStockBlurImpl zeroCopy = new AndroidStockBlurImpl();
+		zeroCopy.setZeroCopy(true);
+		Bitmap input = createInput(135, 240);
+		Bitmap output = Bitmap.createBitmap(135, 240, Bitmap.Config.ARGB_8888);
+		try {
+			assumeTrue(zeroCopy.prepare(context, input, 10));
+			zeroCopy.blur(input, output);
+
+			Bitmap smaller = createInput(90, 160);
+			int[] pixels = new int[90 * 160];
+			smaller.getPixels(pixels, 0, 90, 0, 0, 90, 160);
+			input.reconfigure(90, 160, Bitmap.Config.ARGB_8888);
+			input.setPixels(pixels, 0, 90, 0, 0, 90, 160);
+			output.reconfigure(90, 160, Bitmap.Config.ARGB_8888);
+			Bitmap expected = Bitmap.createBitmap(90, 160, Bitmap.Config.ARGB_8888);
+			assumeTrue(copy.prepare(context, smaller, 10));
+			copy.blur(smaller, expected);
+			assertTrue(zeroCopy.prepare(context, input, 10));
+			zeroCopy.blur(input, output);
+
+			int[] actual = new int[90 * 160];
+			expected.getPixels(pixels, 0, 90, 0, 0, 90, 160);
+			output.getPixels(actual, 0, 90, 0, 0, 90, 160);
+			assertArrayEquals(pixels, actual);
+			smaller.recycle();
+			expected.recycle();
+		} finally {
+			copy.release();
+			zeroCopy.release();
+			input.recycle();
+			output.recycle();
+		}
+	}
+
+	private static void compare(ZeroCopyBlurImpl copy, ZeroCopyBlurImpl zeroCopy) {
+		final Context context = InstrumentationRegistry.getTargetContext();
+		final int width = 135, height = 240;
+		Bitmap input = createInput(width, height);
+		Bitmap copyOutput = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+		Bitmap zeroCopyOutput = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+		zeroCopy.setZeroCopy(true);
+		try {
+			for (float radius : new float[]{1, 8.5f, 25}) {
+				assumeTrue(copy.prepare(context, input, radius));
+				assumeTrue(zeroCopy.prepare(context, input, radius));
+				copy.blur(input, copyOutput);
+				zeroCopy.blur(input, zeroCopyOutput);
+				// the driver may reject shared allocations, then it copies too
+				Log.i(TAG, zeroCopy.getClass().getSimpleName() + " zero copy: " + zeroCopy.isZeroCopy());
+
+				int[] expected = new int[width * height];
+				int[] actual = new int[width * height];
+				copyOutput.getPixels(expected, 0, width, 0, 0, width, height);
+				zeroCopyOutput.getPixels(actual, 0, width, 0, 0, width, height);
+				assertArrayEquals("radius " + radius, expected, actual);
+			}
+		} finally {
+			copy.release();
+			zeroCopy.release();
+			input.recycle();
+			copyOutput.recycle();
+			zeroCopyOutput.recycle();
+		}
+	}
+
+	private static Bitmap createInput(int width, int height) {
+		Random random = new Random(7);
+		int[] pixels = new int[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int edge = (x / 16 + y / 16) % 2 == 0 ? 0xe0 : 0x20;
+				pixels[y * width + x] = 0xff000000 | (x * 255 / width) << 16 | edge << 8 | random.nextInt(256);
+			}
+		}
+		return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888).copy(Bitmap.Config.ARGB_8888, true);
+	}
+}
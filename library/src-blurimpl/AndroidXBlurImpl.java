@@ -8,13 +8,26 @@ import androidx.renderscript.Element;
 import androidx.renderscript.RenderScript;
 import androidx.renderscript.ScriptIntrinsicBlur;
 
-public class AndroidXBlurImpl implements BlurImpl {
+public class AndroidXBlurImpl implements ZeroCopyBlurImpl {
 	private RenderScript mRenderScript;
 	private ScriptIntrinsicBlur mBlurScript;
 	private Allocation mBlurInput, mBlurOutput;
+	private Bitmap.Config mBlurConfig;
+	private float mRadius;
+	// zero copy mode, allocations are backed by the bitmaps
+	private Allocation mSharedInput, mSharedOutput;
+	private Bitmap mSharedInputBitmap, mSharedOutputBitmap;
+	// the pool reconfigures bitmaps in place, the same bitmap may come back with another size
+	private int mSharedWidth, mSharedHeight;
+	private Bitmap.Config mSharedConfig;
+	private boolean mZeroCopyEnabled, mZeroCopy, mSharedRejected;
 
 	@Override
 	public boolean prepare(Context context, Bitmap buffer, float radius) {
+		// the intrinsic only blurs U8_4
+		if (buffer.getConfig() != Bitmap.Config.ARGB_8888) {
+			return false;
+		}
 		if (mRenderScript == null) {
 			try {
 				mRenderScript = RenderScript.create(context);
@@ -29,17 +42,33 @@ public class AndroidXBlurImpl implements BlurImpl {
 				}
 			}
 		}
-		mBlurScript.setRadius(radius);
+		if (mRadius != radius) {
+			mBlurScript.setRadius(radius);
+			mRadius = radius;
+		}
 
-		mBlurInput = Allocation.createFromBitmap(mRenderScript, buffer,
-				Allocation.MipmapControl.MIPMAP_NONE, Allocation.USAGE_SCRIPT);
-		mBlurOutput = Allocation.createTyped(mRenderScript, mBlurInput.getType());
+		// shared allocations are bound to the bitmaps in blur()
+		if (!useSharedAllocations()) {
+			prepareAllocations(buffer);
+		}
 
 		return true;
 	}
 
-	@Override
-	public void release() {
+	private void prepareAllocations(Bitmap buffer) {
+		// only the radius changed, keep the allocations
+		if (mBlurInput == null || mBlurInput.getType().getX() != buffer.getWidth()
+				|| mBlurInput.getType().getY() != buffer.getHeight()
+				|| mBlurConfig != buffer.getConfig()) {
+			releaseAllocations();
+			mBlurInput = Allocation.createFromBitmap(mRenderScript, buffer,
+					Allocation.MipmapControl.MIPMAP_NONE, Allocation.USAGE_SCRIPT);
+			mBlurOutput = Allocation.createTyped(mRenderScript, mBlurInput.getType());
+			mBlurConfig = buffer.getConfig();
+		}
+	}
+
+	private void releaseAllocations() {
 		if (mBlurInput != null) {
 			mBlurInput.destroy();
 			mBlurInput = null;
@@ -48,10 +77,74 @@ public class AndroidXBlurImpl implements BlurImpl {
 			mBlurOutput.destroy();
 			mBlurOutput = null;
 		}
+		mBlurConfig = null;
+	}
+
+	private boolean useSharedAllocations() {
+		return mZeroCopyEnabled && !mSharedRejected;
+	}
+
+	private boolean bindSharedAllocations(Bitmap input, Bitmap output) {
+		if (mSharedInput != null && mSharedInputBitmap == input && mSharedOutputBitmap == output
+				&& isSharedShape(input) && isSharedShape(output)) {
+			return true;
+		}
+		releaseSharedAllocations();
+		try {
+			mSharedInput = Allocation.createFromBitmap(mRenderScript, input,
+					Allocation.MipmapControl.MIPMAP_NONE, Allocation.USAGE_SCRIPT | Allocation.USAGE_SHARED);
+			mSharedOutput = Allocation.createFromBitmap(mRenderScript, output,
+					Allocation.MipmapControl.MIPMAP_NONE, Allocation.USAGE_SCRIPT | Allocation.USAGE_SHARED);
+		} catch (RuntimeException e) {
+			// driver rejects shared allocations
+		}
+		if (mSharedInput == null || mSharedOutput == null
+				|| (mSharedInput.getUsage() & Allocation.USAGE_SHARED) == 0
+				|| (mSharedOutput.getUsage() & Allocation.USAGE_SHARED) == 0) {
+			// don't try again, fallback to copy
+			releaseSharedAllocations();
+			mSharedRejected = true;
+			return false;
+		}
+		mSharedInputBitmap = input;
+		mSharedOutputBitmap = output;
+		mSharedWidth = input.getWidth();
+		mSharedHeight = input.getHeight();
+		mSharedConfig = input.getConfig();
+		// the copy allocations are not needed any more
+		releaseAllocations();
+		return true;
+	}
+
+	private void releaseSharedAllocations() {
+		if (mSharedInput != null) {
+			mSharedInput.destroy();
+			mSharedInput = null;
+		}
+		if (mSharedOutput != null) {
+			mSharedOutput.destroy();
+			mSharedOutput = null;
+		}
+		mSharedInputBitmap = null;
+		mSharedOutputBitmap = null;
+		mSharedConfig = null;
+	}
+
+	private boolean isSharedShape(Bitmap bitmap) {
+		return bitmap.getWidth() == mSharedWidth && bitmap.getHeight() == mSharedHeight
+				&& bitmap.getConfig() == mSharedConfig;
+	}
+
+	@Override
+	public void release() {
+		releaseAllocations();
+		releaseSharedAllocations();
+		mZeroCopy = false;
 		if (mBlurScript != null) {
 			mBlurScript.destroy();
 			mBlurScript = null;
 		}
+		mRadius = 0;
 		if (mRenderScript != null) {
 			mRenderScript.destroy();
 			mRenderScript = null;
@@ -60,12 +153,39 @@ public class AndroidXBlurImpl implements BlurImpl {
 
 	@Override
 	public void blur(Bitmap input, Bitmap output) {
+		if (useSharedAllocations() && bindSharedAllocations(input, output)) {
+			// no-op if the driver really shares the memory with the bitmaps
+			mSharedInput.syncAll(Allocation.USAGE_SHARED);
+			mBlurScript.setInput(mSharedInput);
+			mBlurScript.forEach(mSharedOutput);
+			mSharedOutput.syncAll(Allocation.USAGE_SCRIPT);
+			mZeroCopy = true;
+			return;
+		}
+
+		mZeroCopy = false;
+		prepareAllocations(input);
 		mBlurInput.copyFrom(input);
 		mBlurScript.setInput(mBlurInput);
 		mBlurScript.forEach(mBlurOutput);
 		mBlurOutput.copyTo(output);
 	}
 
+	@Override
+	public void setZeroCopy(boolean enabled) {
+		if (mZeroCopyEnabled != enabled) {
+			mZeroCopyEnabled = enabled;
+			if (!enabled) {
+				releaseSharedAllocations();
+			}
+		}
+	}
+
+	@Override
+	public boolean isZeroCopy() {
+		return mZeroCopy;
+	}
+
 	// android:debuggable="true" in AndroidManifest.xml (auto set by build tool)
 	static Boolean DEBUG = null;
 
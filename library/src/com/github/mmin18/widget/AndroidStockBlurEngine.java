@@ -0,0 +1,130 @@
+package com.github.mmin18.widget;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.renderscript.Allocation;
+import android.renderscript.Element;
+import android.renderscript.RenderScript;
+import android.renderscript.ScriptIntrinsicBlur;
+import android.renderscript.Type;
+
+import java.util.ArrayList;
+
+/**
+ * One RenderScript context and blur intrinsic shared by all AndroidStockBlurImpl in the
+ * process. It is reference counted, and destroyed after it has been unused for a while,
+ * so views in a list or switching screens don't create a new context every time.
+ * <p>
+ * Allocations are leased by size and go back to the engine when the impl is done with
+ * them, ready for the next view with the same size.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+final class AndroidStockBlurEngine {
+	private static final long IDLE_TIMEOUT = 5000;
+	private static final int MAX_FREE_ALLOCATIONS = 4;
+
+	private static AndroidStockBlurEngine INSTANCE;
+	private static Handler HANDLER;
+
+	private final RenderScript mRenderScript;
+	private final ScriptIntrinsicBlur mBlurScript;
+	private float mRadius;
+	private int mRefCount;
+	private final ArrayList<Allocation> mFreeAllocations = new ArrayList<>();
+
+	private static final Runnable TEARDOWN = new Runnable() {
+		@Override
+		public void run() {
+			synchronized (AndroidStockBlurEngine.class) {
+				if (INSTANCE != null && INSTANCE.mRefCount == 0) {
+					INSTANCE.destroy();
+					INSTANCE = null;
+				}
+			}
+		}
+	};
+
+	private AndroidStockBlurEngine(Context context) {
+		mRenderScript = RenderScript.create(context);
+		try {
+			mBlurScript = ScriptIntrinsicBlur.create(mRenderScript, Element.U8_4(mRenderScript));
+		} catch (RuntimeException e) {
+			mRenderScript.destroy();
+			throw e;
+		}
+	}
+
+	/**
+	 * Must be paired with release()
+	 *
+	 * @throws android.renderscript.RSRuntimeException if RenderScript is not available
+	 */
+	static synchronized AndroidStockBlurEngine acquire(Context context) {
+		if (HANDLER == null) {
+			HANDLER = new Handler(Looper.getMainLooper());
+		}
+		HANDLER.removeCallbacks(TEARDOWN);
+		if (INSTANCE == null) {
+			INSTANCE = new AndroidStockBlurEngine(context.getApplicationContext());
+		}
+		INSTANCE.mRefCount++;
+		return INSTANCE;
+	}
+
+	void release() {
+		synchronized (AndroidStockBlurEngine.class) {
+			if (--mRefCount == 0) {
+				HANDLER.postDelayed(TEARDOWN, IDLE_TIMEOUT);
+			}
+		}
+	}
+
+	RenderScript getRenderScript() {
+		return mRenderScript;
+	}
+
+	/**
+	 * Lease an allocation for an ARGB_8888 bitmap, give it back with recycleAllocation()
+	 */
+	synchronized Allocation obtainAllocation(int width, int height) {
+		for (int i = mFreeAllocations.size() - 1; i >= 0; i--) {
+			Type type = mFreeAllocations.get(i).getType();
+			if (type.getX() == width && type.getY() == height) {
+				return mFreeAllocations.remove(i);
+			}
+		}
+		return Allocation.createTyped(mRenderScript,
+				Type.createXY(mRenderScript, Element.RGBA_8888(mRenderScript), width, height));
+	}
+
+	synchronized void recycleAllocation(Allocation allocation) {
+		mFreeAllocations.add(allocation);
+		if (mFreeAllocations.size() > MAX_FREE_ALLOCATIONS) {
+			mFreeAllocations.remove(0).destroy();
+		}
+	}
+
+	/**
+	 * The intrinsic is shared, so setting the radius and running it must not be interleaved
+	 */
+	synchronized void blur(float radius, Allocation input, Allocation output) {
+		if (mRadius != radius) {
+			mBlurScript.setRadius(radius);
+			mRadius = radius;
+		}
+		mBlurScript.setInput(input);
+		mBlurScript.forEach(output);
+	}
+
+	private synchronized void destroy() {
+		for (Allocation allocation : mFreeAllocations) {
+			allocation.destroy();
+		}
+		mFreeAllocations.clear();
+		mBlurScript.destroy();
+		mRenderScript.destroy();
+	}
+}
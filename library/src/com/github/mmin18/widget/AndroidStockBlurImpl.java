@@ -6,22 +6,34 @@ import android.content.pm.ApplicationInfo;
 import android.graphics.Bitmap;
 import android.os.Build;
 import android.renderscript.Allocation;
-import android.renderscript.Element;
-import android.renderscript.RenderScript;
-import android.renderscript.ScriptIntrinsicBlur;
 
+/**
+ * Blur with the stock RenderScript, the context and intrinsic are shared by all views
+ * through AndroidStockBlurEngine.
+ */
 @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
-public class AndroidStockBlurImpl implements BlurImpl {
-	private RenderScript mRenderScript;
-	private ScriptIntrinsicBlur mBlurScript;
+public class AndroidStockBlurImpl implements ZeroCopyBlurImpl {
+	private AndroidStockBlurEngine mEngine;
+	// leased from mEngine
 	private Allocation mBlurInput, mBlurOutput;
+	private float mRadius;
+	// zero copy mode, allocations are backed by the bitmaps
+	private Allocation mSharedInput, mSharedOutput;
+	private Bitmap mSharedInputBitmap, mSharedOutputBitmap;
+	// the pool reconfigures bitmaps in place, the same bitmap may come back with another size
+	private int mSharedWidth, mSharedHeight;
+	private Bitmap.Config mSharedConfig;
+	private boolean mZeroCopyEnabled, mZeroCopy, mSharedRejected;
 
 	@Override
 	public boolean prepare(Context context, Bitmap buffer, float radius) {
-		if (mRenderScript == null) {
+		// the intrinsic only blurs U8_4
+		if (buffer.getConfig() != Bitmap.Config.ARGB_8888) {
+			return false;
+		}
+		if (mEngine == null) {
 			try {
-				mRenderScript = RenderScript.create(context);
-				mBlurScript = ScriptIntrinsicBlur.create(mRenderScript, Element.U8_4(mRenderScript));
+				mEngine = AndroidStockBlurEngine.acquire(context);
 			} catch (android.renderscript.RSRuntimeException e) {
 				if (isDebug(context)) {
 					throw e;
@@ -32,43 +44,141 @@ public class AndroidStockBlurImpl implements BlurImpl {
 				}
 			}
 		}
-		mBlurScript.setRadius(radius);
+		// the intrinsic is shared, the radius is set for each blur
+		mRadius = radius;
 
-		mBlurInput = Allocation.createFromBitmap(mRenderScript, buffer,
-				Allocation.MipmapControl.MIPMAP_NONE, Allocation.USAGE_SCRIPT);
-		mBlurOutput = Allocation.createTyped(mRenderScript, mBlurInput.getType());
+		// shared allocations are bound to the bitmaps in blur()
+		if (!useSharedAllocations()) {
+			prepareAllocations(buffer);
+		}
 
 		return true;
 	}
 
-	@Override
-	public void release() {
+	private void prepareAllocations(Bitmap buffer) {
+		// only the radius changed, keep the allocations
+		if (mBlurInput == null || mBlurInput.getType().getX() != buffer.getWidth()
+				|| mBlurInput.getType().getY() != buffer.getHeight()) {
+			releaseAllocations();
+			mBlurInput = mEngine.obtainAllocation(buffer.getWidth(), buffer.getHeight());
+			mBlurOutput = mEngine.obtainAllocation(buffer.getWidth(), buffer.getHeight());
+		}
+	}
+
+	private void releaseAllocations() {
+		// give them back to the engine for the next view
 		if (mBlurInput != null) {
-			mBlurInput.destroy();
+			mEngine.recycleAllocation(mBlurInput);
 			mBlurInput = null;
 		}
 		if (mBlurOutput != null) {
-			mBlurOutput.destroy();
+			mEngine.recycleAllocation(mBlurOutput);
 			mBlurOutput = null;
 		}
-		if (mBlurScript != null) {
-			mBlurScript.destroy();
-			mBlurScript = null;
+	}
+
+	private boolean useSharedAllocations() {
+		return mZeroCopyEnabled && !mSharedRejected;
+	}
+
+	private boolean bindSharedAllocations(Bitmap input, Bitmap output) {
+		if (mSharedInput != null && mSharedInputBitmap == input && mSharedOutputBitmap == output
+				&& isSharedShape(input) && isSharedShape(output)) {
+			return true;
+		}
+		releaseSharedAllocations();
+		try {
+			mSharedInput = Allocation.createFromBitmap(mEngine.getRenderScript(), input,
+					Allocation.MipmapControl.MIPMAP_NONE, Allocation.USAGE_SCRIPT | Allocation.USAGE_SHARED);
+			mSharedOutput = Allocation.createFromBitmap(mEngine.getRenderScript(), output,
+					Allocation.MipmapControl.MIPMAP_NONE, Allocation.USAGE_SCRIPT | Allocation.USAGE_SHARED);
+		} catch (RuntimeException e) {
+			// driver rejects shared allocations
 		}
-		if (mRenderScript != null) {
-			mRenderScript.destroy();
-			mRenderScript = null;
+		if (mSharedInput == null || mSharedOutput == null
+				|| (mSharedInput.getUsage() & Allocation.USAGE_SHARED) == 0
+				|| (mSharedOutput.getUsage() & Allocation.USAGE_SHARED) == 0) {
+			// don't try again, fallback to copy
+			releaseSharedAllocations();
+			mSharedRejected = true;
+			return false;
+		}
+		mSharedInputBitmap = input;
+		mSharedOutputBitmap = output;
+		mSharedWidth = input.getWidth();
+		mSharedHeight = input.getHeight();
+		mSharedConfig = input.getConfig();
+		// the copy allocations are not needed any more
+		releaseAllocations();
+		return true;
+	}
+
+	private void releaseSharedAllocations() {
+		if (mSharedInput != null) {
+			mSharedInput.destroy();
+			mSharedInput = null;
+		}
+		if (mSharedOutput != null) {
+			mSharedOutput.destroy();
+			mSharedOutput = null;
+		}
+		mSharedInputBitmap = null;
+		mSharedOutputBitmap = null;
+		mSharedConfig = null;
+	}
+
+	private boolean isSharedShape(Bitmap bitmap) {
+		return bitmap.getWidth() == mSharedWidth && bitmap.getHeight() == mSharedHeight
+				&& bitmap.getConfig() == mSharedConfig;
+	}
+
+	@Override
+	public void release() {
+		if (mEngine != null) {
+			releaseAllocations();
+		}
+		releaseSharedAllocations();
+		mZeroCopy = false;
+		mRadius = 0;
+		if (mEngine != null) {
+			mEngine.release();
+			mEngine = null;
 		}
 	}
 
 	@Override
 	public void blur(Bitmap input, Bitmap output) {
+		if (useSharedAllocations() && bindSharedAllocations(input, output)) {
+			// no-op if the driver really shares the memory with the bitmaps
+			mSharedInput.syncAll(Allocation.USAGE_SHARED);
+			mEngine.blur(mRadius, mSharedInput, mSharedOutput);
+			mSharedOutput.syncAll(Allocation.USAGE_SCRIPT);
+			mZeroCopy = true;
+			return;
+		}
+
+		mZeroCopy = false;
+		prepareAllocations(input);
 		mBlurInput.copyFrom(input);
-		mBlurScript.setInput(mBlurInput);
-		mBlurScript.forEach(mBlurOutput);
+		mEngine.blur(mRadius, mBlurInput, mBlurOutput);
 		mBlurOutput.copyTo(output);
 	}
 
+	@Override
+	public void setZeroCopy(boolean enabled) {
+		if (mZeroCopyEnabled != enabled) {
+			mZeroCopyEnabled = enabled;
+			if (!enabled) {
+				releaseSharedAllocations();
+			}
+		}
+	}
+
+	@Override
+	public boolean isZeroCopy() {
+		return mZeroCopy;
+	}
+
 	// android:debuggable="true" in AndroidManifest.xml (auto set by build tool)
 	static Boolean DEBUG = null;
 
@@ -0,0 +1,188 @@
+package com.github.mmin18.widget;
+
+import android.graphics.Bitmap;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs the blur on a background thread into a back buffer, and swaps it with the front
+ * buffer when done.
+ * <p>
+ * There is at most one frame in flight. A frame that comes while the worker is busy is
+ * dropped rather than queued, and the callback asks for a new one when the worker is done,
+ * so the latest content always gets blurred.
+ */
+final class AsyncBlurPipeline {
+
+	interface Job {
+		/**
+		 * Called on the worker thread
+		 *
+		 * @return true if the back buffer has a new frame, false if nothing changed
+		 */
+		boolean blur(Bitmap back);
+	}
+
+	interface Callback {
+		/**
+		 * Called on the worker thread when a frame is done
+		 *
+		 * @param swapped true if there is a new front buffer to draw
+		 * @param dropped true if frames were dropped while busy, a new one should be captured
+		 */
+		void onFrameDone(boolean swapped, boolean dropped);
+	}
+
+	private static ExecutorService EXECUTOR;
+
+	private final Executor mExecutor;
+	private final Callback mCallback;
+	private final Object mLock = new Object();
+	private Bitmap mFront, mBack;
+	private Job mJob;
+	private boolean mBusy, mDropped;
+	private int mSwappedFrames, mDroppedFrames;
+
+	private final Runnable mWork = new Runnable() {
+		@Override
+		public void run() {
+			Job job;
+			Bitmap back;
+			synchronized (mLock) {
+				job = mJob;
+				back = mBack;
+			}
+			boolean swapped = false;
+			try {
+				swapped = job.blur(back);
+			} finally {
+				boolean dropped;
+				synchronized (mLock) {
+					if (swapped && mBack == back) {
+						mBack = mFront;
+						mFront = back;
+						mSwappedFrames++;
+					}
+					dropped = mDropped;
+					mDropped = false;
+					mJob = null;
+					mBusy = false;
+					mLock.notifyAll();
+				}
+				mCallback.onFrameDone(swapped, dropped);
+			}
+		}
+	};
+
+	AsyncBlurPipeline(Callback callback) {
+		this(getDefaultExecutor(), callback);
+	}
+
+	AsyncBlurPipeline(Executor executor, Callback callback) {
+		mExecutor = executor;
+		mCallback = callback;
+	}
+
+	/**
+	 * Only call it when idle (after beginFrame() or awaitIdle())
+	 */
+	void setBuffers(Bitmap front, Bitmap back) {
+		synchronized (mLock) {
+			mFront = front;
+			mBack = back;
+		}
+	}
+
+	/**
+	 * @return the latest blurred frame
+	 */
+	Bitmap getFront() {
+		synchronized (mLock) {
+			return mFront;
+		}
+	}
+
+	/**
+	 * Check before touching the capture buffer, BlurImpl or the bitmaps.
+	 *
+	 * @return false if the worker is still busy, the frame is dropped
+	 */
+	boolean beginFrame() {
+		synchronized (mLock) {
+			if (mBusy) {
+				mDropped = true;
+				mDroppedFrames++;
+				return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Blur the frame on the worker, must follow a successful beginFrame()
+	 */
+	void submit(Job job) {
+		synchronized (mLock) {
+			if (mBusy) {
+				throw new IllegalStateException("Previous frame is not done yet");
+			}
+			mBusy = true;
+			mJob = job;
+		}
+		mExecutor.execute(mWork);
+	}
+
+	/**
+	 * Block until the worker is done with the frame in flight
+	 */
+	void awaitIdle() {
+		synchronized (mLock) {
+			boolean interrupted = false;
+			while (mBusy) {
+				try {
+					mLock.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	boolean isBusy() {
+		synchronized (mLock) {
+			return mBusy;
+		}
+	}
+
+	int getSwappedFrameCount() {
+		synchronized (mLock) {
+			return mSwappedFrames;
+		}
+	}
+
+	int getDroppedFrameCount() {
+		synchronized (mLock) {
+			return mDroppedFrames;
+		}
+	}
+
+	private static synchronized Executor getDefaultExecutor() {
+		if (EXECUTOR == null) {
+			EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "RealtimeBlurView");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return EXECUTOR;
+	}
+}
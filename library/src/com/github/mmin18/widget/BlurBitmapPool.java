@@ -0,0 +1,167 @@
+package com.github.mmin18.widget;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.ArrayList;
+
+/**
+ * Bitmaps released by one blur view are kept here and handed to the next one, instead of
+ * recycling and creating them again on every resize, downsample factor change or when
+ * views come and go in a list.
+ * <p>
+ * A bitmap with the same size and config is reused as is. Otherwise a bigger one is
+ * reconfigured (API 19+). The pool is limited in bytes and evicts the least recently
+ * used bitmaps.
+ */
+public final class BlurBitmapPool {
+	private static final int DEFAULT_MAX_SIZE = 8 * 1024 * 1024;
+
+	private static int MAX_SIZE = DEFAULT_MAX_SIZE;
+	private static int SIZE;
+	// least recently used first
+	private static final ArrayList<Bitmap> BITMAPS = new ArrayList<>();
+	private static int HITS, MISSES, EVICTIONS;
+
+	private BlurBitmapPool() {
+	}
+
+	/**
+	 * @param bytes max bytes of bitmaps kept in the pool, 0 to disable it
+	 */
+	public static synchronized void setMaxSize(int bytes) {
+		MAX_SIZE = bytes;
+		trimToSize(bytes);
+	}
+
+	public static synchronized void clear() {
+		trimToSize(0);
+	}
+
+	/**
+	 * @return bitmaps reused from the pool
+	 */
+	public static synchronized int getHitCount() {
+		return HITS;
+	}
+
+	/**
+	 * @return bitmaps created since there was nothing to reuse
+	 */
+	public static synchronized int getMissCount() {
+		return MISSES;
+	}
+
+	/**
+	 * @return bitmaps recycled to stay in the size limit
+	 */
+	public static synchronized int getEvictionCount() {
+		return EVICTIONS;
+	}
+
+	/**
+	 * @return a mutable bitmap cleared to transparent
+	 * @throws OutOfMemoryError if it can't be created even after the pool is emptied
+	 */
+	static synchronized Bitmap obtain(int width, int height, Bitmap.Config config) {
+		Bitmap bitmap = take(width, height, config);
+		if (bitmap != null) {
+			HITS++;
+			bitmap.eraseColor(0);
+			return bitmap;
+		}
+
+		MISSES++;
+		try {
+			return Bitmap.createBitmap(width, height, config);
+		} catch (OutOfMemoryError e) {
+			// give the memory in the pool back and try again
+			trimToSize(0);
+			return Bitmap.createBitmap(width, height, config);
+		}
+	}
+
+	static synchronized void put(Bitmap bitmap) {
+		if (bitmap == null || bitmap.isRecycled()) {
+			return;
+		}
+		int bytes = getBytes(bitmap);
+		if (bytes > MAX_SIZE || !bitmap.isMutable() || BITMAPS.contains(bitmap)) {
+			bitmap.recycle();
+			return;
+		}
+		BITMAPS.add(bitmap);
+		SIZE += bytes;
+		trimToSize(MAX_SIZE);
+	}
+
+	private static Bitmap take(int width, int height, Bitmap.Config config) {
+		// the most recent one with the same size first
+		for (int i = BITMAPS.size() - 1; i >= 0; i--) {
+			Bitmap b = BITMAPS.get(i);
+			if (b.getWidth() == width && b.getHeight() == height && b.getConfig() == config) {
+				return remove(i);
+			}
+		}
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			return takeReconfigured(width, height, config);
+		}
+		return null;
+	}
+
+	@TargetApi(Build.VERSION_CODES.KITKAT)
+	private static Bitmap takeReconfigured(int width, int height, Bitmap.Config config) {
+		int needed = width * height * bytesPerPixel(config);
+		int best = -1;
+		for (int i = 0; i < BITMAPS.size(); i++) {
+			int bytes = BITMAPS.get(i).getAllocationByteCount();
+			if (bytes >= needed && (best < 0 || bytes < BITMAPS.get(best).getAllocationByteCount())) {
+				best = i;
+			}
+		}
+		if (best < 0) {
+			return null;
+		}
+		Bitmap bitmap = remove(best);
+		try {
+			bitmap.reconfigure(width, height, config);
+			return bitmap;
+		} catch (IllegalArgumentException e) {
+			bitmap.recycle();
+			return null;
+		}
+	}
+
+	private static Bitmap remove(int index) {
+		Bitmap bitmap = BITMAPS.remove(index);
+		SIZE -= getBytes(bitmap);
+		return bitmap;
+	}
+
+	private static void trimToSize(int maxSize) {
+		while (SIZE > maxSize && !BITMAPS.isEmpty()) {
+			remove(0).recycle();
+			EVICTIONS++;
+		}
+	}
+
+	private static int getBytes(Bitmap bitmap) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			return bitmap.getAllocationByteCount();
+		}
+		return bitmap.getByteCount();
+	}
+
+	private static int bytesPerPixel(Bitmap.Config config) {
+		switch (config) {
+			case ALPHA_8:
+				return 1;
+			case RGB_565:
+			case ARGB_4444:
+				return 2;
+			default:
+				return 4;
+		}
+	}
+}
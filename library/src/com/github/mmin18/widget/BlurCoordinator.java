@@ -0,0 +1,284 @@
+package com.github.mmin18.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.WeakHashMap;
+
+/**
+ * One pre-draw listener per decor view for the blur views with setSharedCapture(true).
+ * <p>
+ * Views with the same blur radius, downsample factor, mode and overlay color (the bitmap is
+ * erased with it) whose bounds overlap are put in one group. Each group captures the union of its views' bounds once, blurs it once, and
+ * copies the part behind each view into the view's blurred bitmap. Views far apart are in
+ * different groups, so the cost goes with the area covered, not the number of views.
+ */
+final class BlurCoordinator {
+	private static final WeakHashMap<View, BlurCoordinator> COORDINATORS = new WeakHashMap<>();
+
+	// weak, the map's value must not hold its key
+	private final WeakReference<View> mDecorView;
+	private final ArrayList<RealtimeBlurView> mViews = new ArrayList<>();
+	private final ArrayList<Group> mGroups = new ArrayList<>();
+	private final ContentCapture mCapture = new ContentCapture();
+	private final int[] mLocation = new int[2];
+	private final Rect mBounds = new Rect();
+
+	private BlurCoordinator(View decor) {
+		mDecorView = new WeakReference<>(decor);
+	}
+
+	/**
+	 * UI thread only
+	 */
+	static void attach(View decor, RealtimeBlurView view) {
+		BlurCoordinator coordinator = COORDINATORS.get(decor);
+		if (coordinator == null) {
+			coordinator = new BlurCoordinator(decor);
+			COORDINATORS.put(decor, coordinator);
+			decor.getViewTreeObserver().addOnPreDrawListener(coordinator.preDrawListener);
+		}
+		if (!coordinator.mViews.contains(view)) {
+			coordinator.mViews.add(view);
+		}
+	}
+
+	static void detach(View decor, RealtimeBlurView view) {
+		BlurCoordinator coordinator = COORDINATORS.get(decor);
+		if (coordinator == null || !coordinator.mViews.remove(view)) {
+			return;
+		}
+		for (Group group : coordinator.mGroups) {
+			group.mMembers.remove(view);
+		}
+		if (coordinator.mViews.isEmpty()) {
+			decor.getViewTreeObserver().removeOnPreDrawListener(coordinator.preDrawListener);
+			for (Group group : coordinator.mGroups) {
+				group.release();
+			}
+			coordinator.mGroups.clear();
+			COORDINATORS.remove(decor);
+		}
+	}
+
+	private final ViewTreeObserver.OnPreDrawListener preDrawListener = new ViewTreeObserver.OnPreDrawListener() {
+		@Override
+		public boolean onPreDraw() {
+			final View decor = mDecorView.get();
+			if (decor == null) {
+				return true;
+			}
+			for (Group group : mGroups) {
+				group.mMembers.clear();
+			}
+
+			decor.getLocationOnScreen(mLocation);
+			final int x = mLocation[0];
+			final int y = mLocation[1];
+			for (RealtimeBlurView view : mViews) {
+				if (!view.isShown() || view.getWidth() == 0 || view.getHeight() == 0) {
+					continue;
+				}
+				if (view.getBlurRadius() == 0) {
+					view.setSharedBlurredBitmap(null, null);
+					continue;
+				}
+				view.getLocationOnScreen(mLocation);
+				mBounds.set(mLocation[0] - x, mLocation[1] - y,
+						mLocation[0] - x + view.getWidth(), mLocation[1] - y + view.getHeight());
+				findGroup(view, mBounds).add(view, mBounds);
+			}
+			mergeGroups();
+
+			for (int i = mGroups.size() - 1; i >= 0; i--) {
+				Group group = mGroups.get(i);
+				if (group.mMembers.isEmpty()) {
+					group.release();
+					mGroups.remove(i);
+				} else {
+					group.render(decor);
+				}
+			}
+			return true;
+		}
+	};
+
+	private Group findGroup(RealtimeBlurView view, Rect bounds) {
+		Group empty = null;
+		for (Group group : mGroups) {
+			if (!group.accepts(view)) {
+				continue;
+			}
+			if (group.mMembers.isEmpty()) {
+				if (empty == null) {
+					empty = group;
+				}
+			} else if (Rect.intersects(group.mUnion, bounds)) {
+				return group;
+			}
+		}
+		if (empty != null) {
+			// reuse its bitmaps and blur impl
+			return empty;
+		}
+		Group group = new Group(view);
+		mGroups.add(group);
+		return group;
+	}
+
+	/**
+	 * A view may overlap two groups that were apart before it was added
+	 */
+	private void mergeGroups() {
+		for (boolean merged = true; merged; ) {
+			merged = false;
+			for (int i = 0; i < mGroups.size() && !merged; i++) {
+				Group a = mGroups.get(i);
+				for (int j = i + 1; j < mGroups.size() && !merged; j++) {
+					Group b = mGroups.get(j);
+					if (!a.mMembers.isEmpty() && !b.mMembers.isEmpty()
+							&& a.mRadius == b.mRadius && a.mDownsampleFactor == b.mDownsampleFactor
+							&& a.mBlurMode == b.mBlurMode && a.mEraseColor == b.mEraseColor
+							&& Rect.intersects(a.mUnion, b.mUnion)) {
+						for (int k = 0; k < b.mMembers.size(); k++) {
+							a.add(b.mMembers.get(k), b.mMemberBounds.get(k));
+						}
+						b.mMembers.clear();
+						merged = true;
+					}
+				}
+			}
+		}
+	}
+
+	private final class Group {
+		final float mRadius, mDownsampleFactor;
+		final int mBlurMode;
+		final int mEraseColor;
+		final BlurImpl mBlurImpl;
+		final float mMaxRadius;
+		final ArrayList<RealtimeBlurView> mMembers = new ArrayList<>();
+		// in decor view's coordinates
+		final ArrayList<Rect> mMemberBounds = new ArrayList<>();
+		final Rect mUnion = new Rect();
+		// in the capture bitmap's coordinates
+		final ArrayList<Rect> mBitmapBounds = new ArrayList<>();
+		Bitmap mBitmapToBlur, mBlurredBitmap;
+		Canvas mBlurringCanvas;
+		boolean mPrepared;
+
+		Group(RealtimeBlurView view) {
+			mRadius = view.getBlurRadius();
+			mDownsampleFactor = view.getDownsampleFactor();
+			mBlurMode = view.getBlurMode();
+			mEraseColor = getEraseColor(view);
+			// same as RealtimeBlurView.prepare(), without touching the view's own impl
+			BlurImplRegistry.Backend backend = BlurImplRegistry.select(view.getContext());
+			mMaxRadius = backend.getMaxRadius();
+			float radius = mRadius / mDownsampleFactor;
+			mBlurImpl = radius > mMaxRadius && mBlurMode == RealtimeBlurView.BLUR_MODE_PYRAMID
+					? new PyramidBlurImpl() : backend.create();
+		}
+
+		boolean accepts(RealtimeBlurView view) {
+			return view.getBlurRadius() == mRadius && view.getDownsampleFactor() == mDownsampleFactor
+					&& view.getBlurMode() == mBlurMode && getEraseColor(view) == mEraseColor;
+		}
+
+		void add(RealtimeBlurView view, Rect bounds) {
+			int i = mMembers.size();
+			mMembers.add(view);
+			if (i == mMemberBounds.size()) {
+				mMemberBounds.add(new Rect());
+				mBitmapBounds.add(new Rect());
+			}
+			mMemberBounds.get(i).set(bounds);
+			if (i == 0) {
+				mUnion.set(bounds);
+			} else {
+				mUnion.union(bounds);
+			}
+		}
+
+		void render(View decor) {
+			float downsampleFactor = mDownsampleFactor;
+			float radius = mRadius / downsampleFactor;
+			if (radius > mMaxRadius && !(mBlurImpl instanceof PyramidBlurImpl)) {
+				downsampleFactor = downsampleFactor * radius / mMaxRadius;
+				radius = mMaxRadius;
+			}
+			int scaledWidth = Math.max(1, (int) (mUnion.width() / downsampleFactor));
+			int scaledHeight = Math.max(1, (int) (mUnion.height() / downsampleFactor));
+
+			if (mBlurredBitmap == null
+					|| mBlurredBitmap.getWidth() != scaledWidth
+					|| mBlurredBitmap.getHeight() != scaledHeight) {
+				releaseBitmap();
+				try {
+					mBitmapToBlur = BlurBitmapPool.obtain(scaledWidth, scaledHeight, Bitmap.Config.ARGB_8888);
+					mBlurredBitmap = BlurBitmapPool.obtain(scaledWidth, scaledHeight, Bitmap.Config.ARGB_8888);
+				} catch (OutOfMemoryError e) {
+					// Simply ignore and fallback
+					releaseBitmap();
+					return;
+				}
+				mBlurringCanvas = new Canvas(mBitmapToBlur);
+				mPrepared = false;
+			}
+			if (!mPrepared) {
+				if (!mBlurImpl.prepare(decor.getContext(), mBitmapToBlur, radius)) {
+					return;
+				}
+				mPrepared = true;
+			}
+
+			final float scaleX = 1.f * scaledWidth / mUnion.width();
+			final float scaleY = 1.f * scaledHeight / mUnion.height();
+			for (int i = 0, n = mMembers.size(); i < n; i++) {
+				Rect b = mMemberBounds.get(i);
+				mBitmapBounds.get(i).set(
+						Math.round((b.left - mUnion.left) * scaleX), Math.round((b.top - mUnion.top) * scaleY),
+						Math.round((b.right - mUnion.left) * scaleX), Math.round((b.bottom - mUnion.top) * scaleY));
+			}
+
+			mBitmapToBlur.eraseColor(mEraseColor);
+			int rc = mBlurringCanvas.save();
+			try {
+				mBlurringCanvas.scale(scaleX, scaleY);
+				mBlurringCanvas.translate(-mUnion.left, -mUnion.top);
+				mCapture.capture(decor, mMembers, mMemberBounds.subList(0, mMembers.size()), mBlurringCanvas);
+			} finally {
+				mBlurringCanvas.restoreToCount(rc);
+			}
+			mBlurImpl.blur(mBitmapToBlur, mBlurredBitmap);
+
+			for (int i = 0, n = mMembers.size(); i < n; i++) {
+				mMembers.get(i).setSharedBlurredBitmap(mBlurredBitmap, mBitmapBounds.get(i));
+			}
+		}
+
+		private void releaseBitmap() {
+			BlurBitmapPool.put(mBitmapToBlur);
+			BlurBitmapPool.put(mBlurredBitmap);
+			mBitmapToBlur = null;
+			mBlurredBitmap = null;
+			mBlurringCanvas = null;
+			mPrepared = false;
+		}
+
+		void release() {
+			releaseBitmap();
+			mBlurImpl.release();
+		}
+	}
+
+	// the group's bitmaps are ARGB_8888
+	private static int getEraseColor(RealtimeBlurView view) {
+		return RealtimeBlurView.getEraseColor(Bitmap.Config.ARGB_8888, view.getOverlayColor());
+	}
+}
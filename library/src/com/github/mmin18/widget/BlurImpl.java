@@ -3,12 +3,25 @@ package com.github.mmin18.widget;
 import android.content.Context;
 import android.graphics.Bitmap;
 
-interface BlurImpl {
+/**
+ * Blurs the capture bitmap of a RealtimeBlurView. Each view has its own instance, register
+ * a BlurImplRegistry.Backend to provide one.
+ */
+public interface BlurImpl {
 
+	/**
+	 * Called before the first blur and when the bitmap size, config or radius changes
+	 *
+	 * @param buffer same size and config as the bitmaps of blur()
+	 * @return false if it can't blur, the view draws only the overlay color
+	 */
 	boolean prepare(Context context, Bitmap buffer, float radius);
 
 	void release();
 
+	/**
+	 * Called on a background thread in async mode, see BlurImplRegistry.Backend.isAsyncSafe()
+	 */
 	void blur(Bitmap input, Bitmap output);
 
 }
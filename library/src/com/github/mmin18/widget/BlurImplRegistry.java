@@ -0,0 +1,336 @@
+package com.github.mmin18.widget;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * The BlurImpl backends RealtimeBlurView can use. The one with the highest priority that
+ * works on the device is selected once per process, by the first view or prewarm(). Apps
+ * can register their own before that, like in Application.onCreate().
+ * <p>
+ * The built-in backends, by priority: stock RenderScript (API 17+), AndroidX RenderScript,
+ * support library RenderScript, StackBlurImpl (pure java) and EmptyBlurImpl (no blur).
+ * GaussianBlurImpl only blurs the RGB_565 and ALPHA_8 bitmaps RenderScript can't, it is
+ * never selected for ARGB_8888.
+ */
+public final class BlurImplRegistry {
+	private static final String TAG = "RealtimeBlurView";
+
+	public static final int PRIORITY_STOCK = 400;
+	public static final int PRIORITY_ANDROIDX = 300;
+	public static final int PRIORITY_SUPPORT_LIBRARY = 200;
+	public static final int PRIORITY_GAUSSIAN = 150;
+	public static final int PRIORITY_JAVA = 100;
+	public static final int PRIORITY_EMPTY = Integer.MIN_VALUE;
+
+	/**
+	 * Creates a BlurImpl and tells what it can do
+	 */
+	public static abstract class Backend {
+		private final String mName;
+		private final int mPriority;
+
+		/**
+		 * @param name     unique, the selection is saved by name
+		 * @param priority higher is tried first
+		 */
+		protected Backend(String name, int priority) {
+			mName = name;
+			mPriority = priority;
+		}
+
+		public final String getName() {
+			return mName;
+		}
+
+		public final int getPriority() {
+			return mPriority;
+		}
+
+		public abstract BlurImpl create();
+
+		/**
+		 * Called at most once per process. By default it prepares an impl on a small bitmap,
+		 * it is not available if that throws or fails.
+		 */
+		protected boolean isAvailable(Context context) {
+			BlurImpl impl = create();
+			Bitmap bmp = Bitmap.createBitmap(4, 4, Bitmap.Config.ARGB_8888);
+			try {
+				return impl.prepare(context, bmp, 4);
+			} finally {
+				impl.release();
+				bmp.recycle();
+			}
+		}
+
+		/**
+		 * A bigger radius is blurred on a smaller bitmap (or a pyramid) by RealtimeBlurView
+		 */
+		public float getMaxRadius() {
+			return 25;
+		}
+
+		public boolean supportsConfig(Bitmap.Config config) {
+			return config == Bitmap.Config.ARGB_8888;
+		}
+
+		/**
+		 * @return false if the impl must be used on the UI thread, RealtimeBlurView then
+		 * ignores setAsyncBlur()
+		 */
+		public boolean isAsyncSafe() {
+			return true;
+		}
+	}
+
+	// sorted by priority, highest first
+	private static final ArrayList<Backend> BACKENDS = new ArrayList<>();
+	private static final HashMap<String, Boolean> AVAILABLE = new HashMap<>();
+	private static Backend SELECTED;
+
+	// used when nothing else is available
+	private static final Backend EMPTY = new Backend("empty", PRIORITY_EMPTY) {
+		@Override
+		public BlurImpl create() {
+			return new EmptyBlurImpl();
+		}
+
+		@Override
+		protected boolean isAvailable(Context context) {
+			return true;
+		}
+	};
+
+	static {
+		register(new Backend("stock", PRIORITY_STOCK) {
+			@Override
+			public BlurImpl create() {
+				return new AndroidStockBlurImpl();
+			}
+
+			@Override
+			protected boolean isAvailable(Context context) {
+				return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 && super.isAvailable(context);
+			}
+		});
+		register(new Backend("androidx", PRIORITY_ANDROIDX) {
+			@Override
+			public BlurImpl create() {
+				return new AndroidXBlurImpl();
+			}
+
+			@Override
+			protected boolean isAvailable(Context context) {
+				// initialize RenderScript to load jni impl, may throw unsatisfied link error
+				return hasClass("androidx.renderscript.RenderScript") && super.isAvailable(context);
+			}
+		});
+		register(new Backend("support", PRIORITY_SUPPORT_LIBRARY) {
+			@Override
+			public BlurImpl create() {
+				return new SupportLibraryBlurImpl();
+			}
+
+			@Override
+			protected boolean isAvailable(Context context) {
+				return hasClass("android.support.v8.renderscript.RenderScript") && super.isAvailable(context);
+			}
+		});
+		register(new Backend("gaussian", PRIORITY_GAUSSIAN) {
+			@Override
+			public BlurImpl create() {
+				return new GaussianBlurImpl();
+			}
+
+			@Override
+			protected boolean isAvailable(Context context) {
+				return true;
+			}
+
+			@Override
+			public boolean supportsConfig(Bitmap.Config config) {
+				return config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ALPHA_8;
+			}
+		});
+		register(new Backend("java", PRIORITY_JAVA) {
+			@Override
+			public BlurImpl create() {
+				return new StackBlurImpl();
+			}
+
+			@Override
+			protected boolean isAvailable(Context context) {
+				// doesn't need RenderScript
+				return true;
+			}
+
+			@Override
+			public boolean supportsConfig(Bitmap.Config config) {
+				return config == Bitmap.Config.ARGB_8888 || config == Bitmap.Config.RGB_565
+						|| config == Bitmap.Config.ALPHA_8;
+			}
+		});
+		register(EMPTY);
+	}
+
+	private BlurImplRegistry() {
+	}
+
+	/**
+	 * Add a backend, or replace the one with the same name. Only used by views created
+	 * after the selection if registered later.
+	 */
+	public static synchronized void register(Backend backend) {
+		for (int i = 0; i < BACKENDS.size(); i++) {
+			if (BACKENDS.get(i).getName().equals(backend.getName())) {
+				BACKENDS.remove(i);
+				AVAILABLE.remove(backend.getName());
+				break;
+			}
+		}
+		int index = 0;
+		while (index < BACKENDS.size() && BACKENDS.get(index).getPriority() >= backend.getPriority()) {
+			index++;
+		}
+		BACKENDS.add(index, backend);
+	}
+
+	/**
+	 * @return the selected backend, null if none is selected yet
+	 */
+	public static synchronized Backend getSelected() {
+		return SELECTED;
+	}
+
+	/**
+	 * The backend with the highest priority that is available and blurs ARGB_8888, selected
+	 * once per process
+	 */
+	static synchronized Backend select(Context context) {
+		if (SELECTED != null) {
+			return SELECTED;
+		}
+
+		SharedPreferences prefs = null;
+		String key = null;
+		if (context != null) {
+			try {
+				prefs = context.getSharedPreferences(PROBE_PREFS, Context.MODE_PRIVATE);
+				key = getProbeKey(context);
+				if (key.equals(prefs.getString(PROBE_KEY, null))) {
+					SELECTED = find(prefs.getString(PROBE_RESULT, null));
+				}
+			} catch (Exception e) {
+				// probe again
+			}
+		}
+
+		if (SELECTED == null) {
+			SELECTED = EMPTY;
+			for (Backend backend : BACKENDS) {
+				if (backend.supportsConfig(Bitmap.Config.ARGB_8888) && isAvailable(context, backend)) {
+					SELECTED = backend;
+					break;
+				}
+			}
+			if (prefs != null && key != null) {
+				prefs.edit().putString(PROBE_KEY, key).putString(PROBE_RESULT, SELECTED.getName()).apply();
+			}
+		}
+		Log.i(TAG, "Blur with " + SELECTED.getName());
+		return SELECTED;
+	}
+
+	/**
+	 * For a bitmap config the selected backend doesn't support
+	 *
+	 * @return the backend with the highest priority that is available and supports the
+	 * config, or null
+	 */
+	static synchronized Backend select(Context context, Bitmap.Config config) {
+		Backend selected = select(context);
+		if (selected.supportsConfig(config)) {
+			return selected;
+		}
+		for (Backend backend : BACKENDS) {
+			if (backend.supportsConfig(config) && isAvailable(context, backend)) {
+				return backend;
+			}
+		}
+		return null;
+	}
+
+	private static boolean isAvailable(Context context, Backend backend) {
+		Boolean available = AVAILABLE.get(backend.getName());
+		if (available == null) {
+			try {
+				available = backend.isAvailable(context);
+			} catch (Throwable e) {
+				// class not found or unsatisfied link
+				available = false;
+			}
+			AVAILABLE.put(backend.getName(), available);
+		}
+		return available;
+	}
+
+	private static Backend find(String name) {
+		for (Backend backend : BACKENDS) {
+			if (backend.getName().equals(name)) {
+				return backend;
+			}
+		}
+		return null;
+	}
+
+	private static boolean hasClass(String name) {
+		try {
+			BlurImplRegistry.class.getClassLoader().loadClass(name);
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	// bump it if the built-in backends change
+	private static final int PROBE_VERSION = 3;
+	private static final String PROBE_PREFS = "com.github.mmin18.realtimeblurview";
+	private static final String PROBE_KEY = "probe_key";
+	private static final String PROBE_RESULT = "blur_backend";
+
+	/**
+	 * The selection is saved for the same OS build, app version and backends, so later
+	 * process starts don't need to create RenderScript contexts to find it out again.
+	 */
+	private static String getProbeKey(Context context) throws PackageManager.NameNotFoundException {
+		PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+		StringBuilder sb = new StringBuilder();
+		sb.append(PROBE_VERSION).append('|').append(Build.FINGERPRINT)
+				.append('|').append(getVersionCode(info)).append('|').append(info.lastUpdateTime);
+		for (Backend backend : BACKENDS) {
+			sb.append('|').append(backend.getName());
+		}
+		return sb.toString();
+	}
+
+	private static long getVersionCode(PackageInfo info) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+			return info.getLongVersionCode();
+		}
+		return getVersionCodeLegacy(info);
+	}
+
+	@SuppressWarnings("deprecation")
+	private static long getVersionCodeLegacy(PackageInfo info) {
+		return info.versionCode;
+	}
+}
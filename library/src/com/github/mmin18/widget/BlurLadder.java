@@ -0,0 +1,167 @@
+package com.github.mmin18.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+
+/**
+ * A blur radius animation of RealtimeBlurView.animateBlurRadius(). The content behind the
+ * view is captured once and blurred at a few radii from start to end, and each frame of
+ * the animation is a cross-fade of the two levels around it. So a blur-in costs LEVELS
+ * blurs instead of one per frame.
+ * <p>
+ * Without levels (the view can't blur the whole capture at once, like in async or tiled
+ * mode), the view sets the radius on every frame instead.
+ */
+final class BlurLadder {
+	static final int LEVELS = 5;
+
+	private final float mFrom, mTo;
+	private final long mDuration;
+	// set on the first frame drawn
+	private long mStart = -1;
+	private Bitmap[] mLevels;
+	private boolean mFallback;
+	private Canvas mCanvas;
+	private Paint mSrcPaint, mFadePaint;
+
+	BlurLadder(float from, float to, long duration) {
+		mFrom = from;
+		mTo = to;
+		mDuration = Math.max(0, duration);
+	}
+
+	float getFrom() {
+		return mFrom;
+	}
+
+	float getTo() {
+		return mTo;
+	}
+
+	/**
+	 * @return the radius of the animation at the given fraction
+	 */
+	float getRadius(float fraction) {
+		return mFrom + (mTo - mFrom) * fraction;
+	}
+
+	/**
+	 * @return 0 - 1, the animation starts on the first call
+	 */
+	float getFraction(long now) {
+		if (mStart < 0) {
+			mStart = now;
+		}
+		return mDuration == 0 ? 1 : Math.min(1, (float) (now - mStart) / mDuration);
+	}
+
+	boolean isBuilt() {
+		return mLevels != null;
+	}
+
+	/**
+	 * @return true if the levels are still to be built from the next capture
+	 */
+	boolean isPending() {
+		return mLevels == null && !mFallback;
+	}
+
+	boolean isFallback() {
+		return mFallback;
+	}
+
+	void setFallback() {
+		mFallback = true;
+	}
+
+	/**
+	 * Blur the capture at each level
+	 *
+	 * @param scale     from view pixels to capture pixels
+	 * @param maxRadius of the impl, levels may be over it since the capture is at least 1 px
+	 *                  or the downsample factor changed
+	 * @return false if the impl fails or the bitmaps can't be allocated
+	 */
+	boolean build(Context context, BlurImpl impl, Bitmap capture, float scale, float maxRadius) {
+		final Bitmap[] levels = new Bitmap[LEVELS];
+		boolean r = false;
+		try {
+			for (int i = 0; i < LEVELS; i++) {
+				levels[i] = BlurBitmapPool.obtain(capture.getWidth(), capture.getHeight(), capture.getConfig());
+				if (levels[i] == null) {
+					return false;
+				}
+				float radius = Math.min(getRadius((float) i / (LEVELS - 1)) * scale, maxRadius);
+				if (radius < 0.5f) {
+					// not blurred
+					if (mCanvas == null) {
+						mCanvas = new Canvas();
+					}
+					mCanvas.setBitmap(levels[i]);
+					mCanvas.drawBitmap(capture, 0, 0, getSrcPaint());
+					mCanvas.setBitmap(null);
+				} else if (impl.prepare(context, capture, radius)) {
+					impl.blur(capture, levels[i]);
+				} else {
+					return false;
+				}
+			}
+			mLevels = levels;
+			r = true;
+		} catch (OutOfMemoryError e) {
+			// no ladder, fallback
+		} finally {
+			if (!r) {
+				for (Bitmap level : levels) {
+					if (level != null) {
+						BlurBitmapPool.put(level);
+					}
+				}
+			}
+		}
+		return r;
+	}
+
+	/**
+	 * Cross-fade the two levels around the fraction into target
+	 */
+	void draw(Bitmap target, float fraction) {
+		float position = fraction * (LEVELS - 1);
+		int i = Math.min((int) position, LEVELS - 2);
+		if (mCanvas == null) {
+			mCanvas = new Canvas();
+		}
+		if (mFadePaint == null) {
+			mFadePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+		}
+		mCanvas.setBitmap(target);
+		mCanvas.drawBitmap(mLevels[i], 0, 0, getSrcPaint());
+		mFadePaint.setAlpha(Math.round((position - i) * 255));
+		mCanvas.drawBitmap(mLevels[i + 1], 0, 0, mFadePaint);
+		mCanvas.setBitmap(null);
+	}
+
+	private Paint getSrcPaint() {
+		if (mSrcPaint == null) {
+			mSrcPaint = new Paint();
+			mSrcPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+		}
+		return mSrcPaint;
+	}
+
+	/**
+	 * Give the levels back to the pool, they are built again from the next capture
+	 */
+	void release() {
+		if (mLevels != null) {
+			for (Bitmap level : mLevels) {
+				BlurBitmapPool.put(level);
+			}
+			mLevels = null;
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package com.github.mmin18.widget;
+
+import java.util.Arrays;
+
+/**
+ * Frame timings and counters of a RealtimeBlurView, see RealtimeBlurView.setMetrics().
+ * Views without one don't measure anything.
+ * <p>
+ * The last samples of each stage are kept in a ring buffer for percentiles, nothing is
+ * allocated after it is created. It is thread safe, the blur stage is recorded on the
+ * worker thread in async mode.
+ */
+public final class BlurMetrics {
+	/**
+	 * Drawing the views behind into the capture bitmap
+	 */
+	public static final int STAGE_CAPTURE = 0;
+	/**
+	 * Clearing the capture bitmap
+	 */
+	public static final int STAGE_ERASE = 1;
+	/**
+	 * BlurImpl.blur(), including the change detection if enabled
+	 */
+	public static final int STAGE_BLUR = 2;
+	/**
+	 * Drawing the blurred bitmap and overlay color in onDraw(), only recording the display
+	 * list with hardware acceleration
+	 */
+	public static final int STAGE_DRAW = 3;
+	private static final int STAGE_COUNT = 4;
+
+	public interface Listener {
+		/**
+		 * Called after each blurred frame, on the thread that blurred it
+		 */
+		void onFrame(BlurMetrics metrics);
+	}
+
+	private final long[][] mSamples;
+	private final int[] mSampleCount = new int[STAGE_COUNT];
+	private final int[] mSampleNext = new int[STAGE_COUNT];
+	private final long[] mLast = new long[STAGE_COUNT];
+	private final long[] mSorted;
+	private int mFrames, mSkipped, mFailed, mOutOfMemory;
+	private int mBitmapWidth, mBitmapHeight;
+	private String mBackend;
+	private volatile Listener mListener;
+
+	public BlurMetrics() {
+		this(120);
+	}
+
+	/**
+	 * @param window samples kept for each stage
+	 */
+	public BlurMetrics(int window) {
+		if (window <= 0) {
+			throw new IllegalArgumentException("Window must be greater than 0.");
+		}
+		mSamples = new long[STAGE_COUNT][window];
+		mSorted = new long[window];
+	}
+
+	public void setListener(Listener listener) {
+		mListener = listener;
+	}
+
+	/**
+	 * @return duration of the stage in the last frame
+	 */
+	public synchronized long getLastNanos(int stage) {
+		return mLast[stage];
+	}
+
+	/**
+	 * @param percentile 0 - 100, like 50, 95 or 99
+	 * @return nearest-rank percentile of the stage over the last samples, 0 if there is none
+	 */
+	public synchronized long getPercentileNanos(int stage, float percentile) {
+		int count = mSampleCount[stage];
+		if (count == 0) {
+			return 0;
+		}
+		System.arraycopy(mSamples[stage], 0, mSorted, 0, count);
+		Arrays.sort(mSorted, 0, count);
+		int rank = (int) Math.ceil(percentile / 100 * count);
+		return mSorted[Math.max(0, Math.min(count - 1, rank - 1))];
+	}
+
+	/**
+	 * @return frames blurred
+	 */
+	public synchronized int getFrameCount() {
+		return mFrames;
+	}
+
+	/**
+	 * @return frames not blurred since the content didn't change, or the worker was busy
+	 */
+	public synchronized int getSkippedFrameCount() {
+		return mSkipped;
+	}
+
+	/**
+	 * @return frames not blurred since the BlurImpl failed to prepare
+	 */
+	public synchronized int getFailedFrameCount() {
+		return mFailed;
+	}
+
+	/**
+	 * @return frames not blurred since the bitmaps couldn't be allocated
+	 */
+	public synchronized int getOutOfMemoryCount() {
+		return mOutOfMemory;
+	}
+
+	/**
+	 * @return size of the capture bitmap in the last frame
+	 */
+	public synchronized int getBitmapWidth() {
+		return mBitmapWidth;
+	}
+
+	public synchronized int getBitmapHeight() {
+		return mBitmapHeight;
+	}
+
+	/**
+	 * @return class name of the BlurImpl in use
+	 */
+	public synchronized String getBackend() {
+		return mBackend;
+	}
+
+	public synchronized void reset() {
+		Arrays.fill(mSampleCount, 0);
+		Arrays.fill(mSampleNext, 0);
+		Arrays.fill(mLast, 0);
+		mFrames = 0;
+		mSkipped = 0;
+		mFailed = 0;
+		mOutOfMemory = 0;
+	}
+
+	synchronized void setBackend(String backend) {
+		mBackend = backend;
+	}
+
+	synchronized void setBitmapSize(int width, int height) {
+		mBitmapWidth = width;
+		mBitmapHeight = height;
+	}
+
+	synchronized void record(int stage, long nanos) {
+		mLast[stage] = nanos;
+		long[] samples = mSamples[stage];
+		samples[mSampleNext[stage]] = nanos;
+		mSampleNext[stage] = (mSampleNext[stage] + 1) % samples.length;
+		if (mSampleCount[stage] < samples.length) {
+			mSampleCount[stage]++;
+		}
+	}
+
+	void frameDone() {
+		synchronized (this) {
+			mFrames++;
+		}
+		Listener listener = mListener;
+		if (listener != null) {
+			listener.onFrame(this);
+		}
+	}
+
+	synchronized void frameSkipped() {
+		mSkipped++;
+	}
+
+	synchronized void frameFailed() {
+		mFailed++;
+	}
+
+	synchronized void outOfMemory() {
+		mOutOfMemory++;
+	}
+}
@@ -0,0 +1,78 @@
+package com.github.mmin18.widget;
+
+import android.graphics.Rect;
+
+/**
+ * Splits a bitmap into tiles of the same size that overlap by twice the halo (the blur
+ * radius), so a single set of tile sized buffers can blur all of them.
+ * <p>
+ * A blurred pixel only depends on the pixels within the halo, so the blurred tile is the
+ * same as blurring the whole bitmap except within the halo of its edges. At the edges of
+ * the bitmap the tile is clamped the same way as the whole bitmap, the rest is valid. The
+ * last tile on each axis is moved back to end at the edge, the valid parts of the tiles
+ * cover the bitmap without gap.
+ */
+final class BlurTiles {
+	// valid pixels of a tile on each axis, the tile is bigger by the halo on both sides
+	static final int TILE_SIZE = 256;
+
+	private int mWidth, mHeight, mHalo;
+	private int mTileWidth, mTileHeight;
+	private int mColumns, mRows;
+
+	/**
+	 * @return size of the tiles on an axis of the given size
+	 */
+	static int getTileSize(int size, int halo) {
+		return Math.min(size, TILE_SIZE + 2 * halo);
+	}
+
+	void set(int width, int height, int halo) {
+		mWidth = width;
+		mHeight = height;
+		mHalo = halo;
+		mTileWidth = getTileSize(width, halo);
+		mTileHeight = getTileSize(height, halo);
+		mColumns = count(width, mTileWidth, halo);
+		mRows = count(height, mTileHeight, halo);
+	}
+
+	int getCount() {
+		return mColumns * mRows;
+	}
+
+	int getTileWidth() {
+		return mTileWidth;
+	}
+
+	int getTileHeight() {
+		return mTileHeight;
+	}
+
+	/**
+	 * @param window the tile in the bitmap
+	 * @param valid  the part of the tile that is the same as blurring the whole bitmap
+	 */
+	void getTile(int index, Rect window, Rect valid) {
+		int left = start(index % mColumns, mColumns, mWidth, mTileWidth, mHalo);
+		int top = start(index / mColumns, mRows, mHeight, mTileHeight, mHalo);
+		int right = left + mTileWidth;
+		int bottom = top + mTileHeight;
+		window.set(left, top, right, bottom);
+		valid.set(left == 0 ? 0 : left + mHalo, top == 0 ? 0 : top + mHalo,
+				right == mWidth ? right : right - mHalo, bottom == mHeight ? bottom : bottom - mHalo);
+	}
+
+	private static int count(int size, int tile, int halo) {
+		if (tile >= size) {
+			return 1;
+		}
+		// tiles at every step while they end before the edge, and the last one at the edge
+		int step = tile - 2 * halo;
+		return (size - tile + step - 1) / step + 1;
+	}
+
+	private static int start(int i, int count, int size, int tile, int halo) {
+		return i == count - 1 ? size - tile : i * (tile - 2 * halo);
+	}
+}
@@ -0,0 +1,566 @@
+package com.github.mmin18.widget;
+
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Region;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.view.animation.Animation;
+import android.view.animation.Transformation;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+import android.widget.RelativeLayout;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Draws what is behind a view: walks down from the decor view along the path to the
+ * view, drawing each ViewGroup's background and the children before the path in drawing
+ * order, and stops when it reaches the view. Views above it are never visited.
+ * <p>
+ * Children are drawn with the same transform, clip and alpha their parent would apply.
+ * Custom drawing order (ViewGroup.getChildDrawingOrder()) is not visible from outside,
+ * children are drawn in index order, sorted by Z on API 21+.
+ * <p>
+ * Children entirely outside of the canvas clip (the capture bitmap, plus the halo if the
+ * caller asks for one) are culled before their draw() runs. Plain layouts that don't
+ * draw anything themselves are walked into, so their children can be culled too.
+ * <p>
+ * Ancestors which draw more than their background and children (ListView dividers,
+ * RecyclerView decorations, DrawerLayout scrims) can't be walked into. They draw
+ * themselves, and when the target's draw() is reached the canvas is restored to where the
+ * ancestor started, clipped to nothing and saved again as many times. Whatever the ancestor
+ * draws after the target is clipped away (the framework culls the children), and its own
+ * saves and restores still match. If a view in between draws into its own cache (a
+ * software layer), only the target is left out of it. Such ancestors need a bitmap canvas,
+ * on a RenderNode the target would be drawn by its display list without its draw().
+ * <p>
+ * With several targets (blur views sharing one capture), the walk goes on until the last
+ * target is reached. Each target reached is clipped out of everything drawn after it,
+ * so a view above one target but below another doesn't end up behind the first one.
+ */
+final class ContentCapture {
+	private final ArrayList<View> mTargets = new ArrayList<>();
+	// bounds of the targets in the canvas' device coordinates
+	private List<Rect> mTargetBounds;
+	// parents of the targets up to the decor view
+	private final ArrayList<View> mAncestors = new ArrayList<>();
+	private int mRemaining;
+	// bounds of the targets already reached
+	private final ArrayList<Rect> mFrozen = new ArrayList<>();
+	// from the canvas at each depth to the decor view, canvas.getMatrix() is deprecated
+	private final ArrayList<Matrix> mMatrices = new ArrayList<>();
+	private final Matrix mInverse = new Matrix();
+	private final RectF mClipRect = new RectF();
+	private final Path mClipPath = new Path();
+	// drawing order of children at each depth
+	private final ArrayList<ArrayList<View>> mOrders = new ArrayList<>();
+	private int mDrawnCount, mCulledCount;
+	private final Transformation mTransformation = new Transformation();
+	// the capture whose ancestor is drawing itself, its targets stop the drawing
+	private static ContentCapture sStopping;
+	// the canvas of the ancestor drawing itself, and its save count when it started
+	private Canvas mStopCanvas;
+	private int mStopSaveCount;
+	private boolean mStopped;
+	// OVERRIDES_* of each ancestor class
+	private static final HashMap<Class<?>, Integer> sOverrides = new HashMap<>();
+	private static final int OVERRIDES_ON_DRAW = 1;
+	private static final int OVERRIDES_DISPATCH_DRAW = 2;
+
+	/**
+	 * @param canvas in decor view's coordinates
+	 * @return false if target is not in the decor view, and the whole decor view is drawn
+	 */
+	boolean capture(View decor, View target, Canvas canvas) {
+		mTargets.clear();
+		mTargets.add(target);
+		return capture(decor, canvas, null);
+	}
+
+	/**
+	 * @param targetBounds bounds of each target in the decor view's coordinates
+	 * @return false if none of the targets is in the decor view, and the whole decor view is drawn
+	 */
+	boolean capture(View decor, List<? extends View> targets, List<Rect> targetBounds, Canvas canvas) {
+		mTargets.clear();
+		mTargets.addAll(targets);
+		return capture(decor, canvas, targetBounds);
+	}
+
+	private boolean capture(View decor, Canvas canvas, List<Rect> targetBounds) {
+		mDrawnCount = 0;
+		mCulledCount = 0;
+		mTargetBounds = targetBounds;
+		mAncestors.clear();
+		mFrozen.clear();
+		mRemaining = 0;
+		getMatrix(0).reset();
+		for (int i = 0; i < mTargets.size(); i++) {
+			if (addAncestors(decor, mTargets.get(i))) {
+				mRemaining++;
+			} else {
+				// on another window
+				mTargets.set(i, null);
+			}
+		}
+
+		try {
+			mDrawnCount++;
+			if (mRemaining == 0 || !(decor instanceof ViewGroup)) {
+				drawBackground(decor, canvas);
+				decor.draw(canvas);
+				return false;
+			}
+			drawBehind((ViewGroup) decor, canvas, 0);
+			return true;
+		} finally {
+			// don't hold the views
+			mTargets.clear();
+			mAncestors.clear();
+			mFrozen.clear();
+			mTargetBounds = null;
+			mStopCanvas = null;
+			for (ArrayList<View> order : mOrders) {
+				order.clear();
+			}
+		}
+	}
+
+	private boolean addAncestors(View decor, View target) {
+		int size = mAncestors.size();
+		for (View v = target; v != decor; ) {
+			ViewParent parent = v.getParent();
+			if (!(parent instanceof View)) {
+				// roll back
+				while (mAncestors.size() > size) {
+					mAncestors.remove(mAncestors.size() - 1);
+				}
+				return false;
+			}
+			v = (View) parent;
+			if (v != decor && !mAncestors.contains(v)) {
+				mAncestors.add(v);
+			}
+		}
+		return target != decor;
+	}
+
+	/**
+	 * @return views drawn (or walked into) by the last capture
+	 */
+	int getDrawnCount() {
+		return mDrawnCount;
+	}
+
+	/**
+	 * @return views skipped by the last capture since they are out of the clip
+	 */
+	int getCulledCount() {
+		return mCulledCount;
+	}
+
+	/**
+	 * @return true when the last target is reached, everything after it is above the targets
+	 */
+	private boolean drawBehind(ViewGroup group, Canvas canvas, int depth) {
+		drawBackground(group, canvas);
+
+		boolean stop = false;
+		int sc = canvas.save();
+		clipToPadding(group, canvas);
+		ArrayList<View> children = getDrawingOrder(group, depth);
+		for (int i = 0, n = children.size(); i < n && !stop; i++) {
+			View child = children.get(i);
+			int target = mTargets.indexOf(child);
+			if (target >= 0) {
+				stop = --mRemaining == 0;
+				if (mTargetBounds != null) {
+					mFrozen.add(mTargetBounds.get(target));
+				}
+			} else if (mAncestors.contains(child)) {
+				if (isVisible(child)) {
+					int rc = canvas.save();
+					transformToChild(group, child, canvas, false, depth + 1);
+					clipFrozen(canvas, depth + 1);
+					mDrawnCount++;
+					if (drawsItself(child) && !canvas.isHardwareAccelerated()) {
+						stop = drawUntilTarget(child, canvas);
+					} else {
+						stop = drawBehind((ViewGroup) child, canvas, depth + 1);
+					}
+					canvas.restoreToCount(rc);
+				} else {
+					// targets in it are not shown
+					mRemaining -= countTargetsIn(child);
+					stop = mRemaining <= 0;
+				}
+			} else {
+				drawChild(group, child, canvas, depth + 1);
+			}
+		}
+		canvas.restoreToCount(sc);
+		return stop;
+	}
+
+	/**
+	 * Lets the ancestor draw itself until the first target in it, see stop(). The other
+	 * targets in the same ancestor miss what is drawn between the first one and them.
+	 *
+	 * @return true when the last target is reached
+	 */
+	private boolean drawUntilTarget(View ancestor, Canvas canvas) {
+		sStopping = this;
+		mStopCanvas = canvas;
+		mStopSaveCount = canvas.getSaveCount();
+		mStopped = false;
+		try {
+			ancestor.draw(canvas);
+		} finally {
+			sStopping = null;
+			mStopCanvas = null;
+			// in case the ancestor didn't restore
+			canvas.restoreToCount(mStopSaveCount);
+		}
+		if (mTargetBounds != null) {
+			for (int i = 0, n = mTargets.size(); i < n; i++) {
+				if (isTargetIn(mTargets.get(i), ancestor)) {
+					mFrozen.add(mTargetBounds.get(i));
+				}
+			}
+		}
+		mRemaining -= countTargetsIn(ancestor);
+		return mRemaining <= 0;
+	}
+
+	/**
+	 * Called from the targets' draw(), stops an ancestor drawing itself
+	 *
+	 * @return true if the view is a target of the capture, it must not draw
+	 */
+	static boolean stopAtTarget(View view, Canvas canvas) {
+		if (sStopping == null || !sStopping.mTargets.contains(view)) {
+			return false;
+		}
+		sStopping.stop(canvas);
+		return true;
+	}
+
+	/**
+	 * Clip away everything the ancestor draws from now on, without changing its save count
+	 */
+	private void stop(Canvas canvas) {
+		if (mStopped || canvas != mStopCanvas) {
+			// already stopped, or drawn into a cache of a view in between
+			return;
+		}
+		mStopped = true;
+		int count = canvas.getSaveCount();
+		// draws the layers saved since, they have what is behind the target
+		canvas.restoreToCount(mStopSaveCount);
+		canvas.clipRect(0, 0, 0, 0);
+		while (canvas.getSaveCount() < count) {
+			canvas.save();
+		}
+	}
+
+	private static boolean isTargetIn(View target, View ancestor) {
+		View v = target;
+		while (v != null && v != ancestor) {
+			ViewParent parent = v.getParent();
+			v = parent instanceof View ? (View) parent : null;
+		}
+		return v != null;
+	}
+
+	private int countTargetsIn(View ancestor) {
+		int count = 0;
+		for (int i = 0, n = mTargets.size(); i < n; i++) {
+			if (isTargetIn(mTargets.get(i), ancestor)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Clip out the targets already reached
+	 */
+	private void clipFrozen(Canvas canvas, int depth) {
+		if (mFrozen.isEmpty() || !getMatrix(depth).invert(mInverse)) {
+			return;
+		}
+		final boolean rect = mInverse.rectStaysRect();
+		for (int i = 0, n = mFrozen.size(); i < n; i++) {
+			mClipRect.set(mFrozen.get(i));
+			if (rect) {
+				mInverse.mapRect(mClipRect);
+				if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+					canvas.clipOutRect(mClipRect);
+				} else {
+					clipOutLegacy(canvas, mClipRect);
+				}
+			} else {
+				// rotated or skewed
+				mClipPath.reset();
+				mClipPath.addRect(mClipRect, Path.Direction.CW);
+				mClipPath.transform(mInverse);
+				if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+					canvas.clipOutPath(mClipPath);
+				} else {
+					clipOutLegacy(canvas, mClipPath);
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	private static void clipOutLegacy(Canvas canvas, RectF rect) {
+		canvas.clipRect(rect, Region.Op.DIFFERENCE);
+	}
+
+	@SuppressWarnings("deprecation")
+	private static void clipOutLegacy(Canvas canvas, Path path) {
+		canvas.clipPath(path, Region.Op.DIFFERENCE);
+	}
+
+	private Matrix getMatrix(int depth) {
+		while (mMatrices.size() <= depth) {
+			mMatrices.add(new Matrix());
+		}
+		return mMatrices.get(depth);
+	}
+
+	private void drawChildren(ViewGroup group, Canvas canvas, int depth) {
+		drawBackground(group, canvas);
+
+		int sc = canvas.save();
+		clipToPadding(group, canvas);
+		ArrayList<View> children = getDrawingOrder(group, depth);
+		for (int i = 0, n = children.size(); i < n; i++) {
+			drawChild(group, children.get(i), canvas, depth + 1);
+		}
+		children.clear();
+		canvas.restoreToCount(sc);
+	}
+
+	private void drawChild(ViewGroup parent, View child, Canvas canvas, int depth) {
+		if (!isVisible(child)) {
+			return;
+		}
+		int rc = canvas.save();
+		if (transformToChild(parent, child, canvas, true, depth)) {
+			clipFrozen(canvas, depth);
+			mDrawnCount++;
+			if (isPlainLayout(child)) {
+				drawChildren((ViewGroup) child, canvas, depth);
+			} else {
+				child.draw(canvas);
+			}
+		} else {
+			mCulledCount++;
+		}
+		canvas.restoreToCount(rc);
+	}
+
+	private ArrayList<View> getDrawingOrder(ViewGroup group, int depth) {
+		while (mOrders.size() <= depth) {
+			mOrders.add(new ArrayList<View>());
+		}
+		ArrayList<View> order = mOrders.get(depth);
+		order.clear();
+		final boolean sortByZ = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
+		for (int i = 0, n = group.getChildCount(); i < n; i++) {
+			View child = group.getChildAt(i);
+			int j = order.size();
+			if (sortByZ) {
+				// stable, same as ViewGroup.buildOrderedChildList()
+				while (j > 0 && order.get(j - 1).getZ() > child.getZ()) {
+					j--;
+				}
+			}
+			order.add(j, child);
+		}
+		return order;
+	}
+
+	private static boolean isVisible(View child) {
+		return child.getVisibility() == View.VISIBLE || getRunningAnimation(child) != null;
+	}
+
+	/**
+	 * @return the legacy animation whose transformation the parent applies, null if it is not
+	 * started yet or it is over
+	 */
+	private static Animation getRunningAnimation(View child) {
+		Animation animation = child.getAnimation();
+		if (animation == null || !animation.hasStarted()) {
+			return null;
+		}
+		return !animation.hasEnded() || animation.getFillAfter() ? animation : null;
+	}
+
+	/**
+	 * @return true if a view between the decor view and the target draws itself. It can't be
+	 * walked into on a RenderNode, drawing it there records the target's display list
+	 * instead of calling its draw().
+	 */
+	static boolean hasAncestorDrawingItself(View decor, View target) {
+		for (ViewParent parent = target.getParent(); parent instanceof View && parent != decor; parent = parent.getParent()) {
+			if (drawsItself((View) parent)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The framework layouts don't (but LinearLayout with dividers), any other class does if it
+	 * overrides dispatchDraw() or drawChild(), or onDraw() and it draws
+	 */
+	private static boolean drawsItself(View ancestor) {
+		if (ancestor instanceof LinearLayout
+				&& ((LinearLayout) ancestor).getShowDividers() != LinearLayout.SHOW_DIVIDER_NONE) {
+			return true;
+		}
+		Class<?> cls = ancestor.getClass();
+		Integer overrides = sOverrides.get(cls);
+		if (overrides == null) {
+			overrides = getOverrides(cls);
+			sOverrides.put(cls, overrides);
+		}
+		if ((overrides & OVERRIDES_DISPATCH_DRAW) != 0) {
+			return true;
+		}
+		// onDraw() is skipped if it will not draw
+		return (overrides & OVERRIDES_ON_DRAW) != 0 && !ancestor.willNotDraw();
+	}
+
+	private static int getOverrides(Class<?> cls) {
+		int overrides = 0;
+		for (Class<?> c = cls; c != ViewGroup.class && c != FrameLayout.class
+				&& c != LinearLayout.class && c != RelativeLayout.class; c = c.getSuperclass()) {
+			for (Method method : c.getDeclaredMethods()) {
+				String name = method.getName();
+				if (name.equals("onDraw")) {
+					overrides |= OVERRIDES_ON_DRAW;
+				} else if (name.equals("dispatchDraw") || name.equals("drawChild")) {
+					overrides |= OVERRIDES_DISPATCH_DRAW;
+				}
+			}
+		}
+		return overrides;
+	}
+
+	/**
+	 * Framework layouts which only draw their background and children, so walking into
+	 * them draws the same thing as their draw()
+	 */
+	private static boolean isPlainLayout(View view) {
+		Class<?> cls = view.getClass();
+		if (cls != FrameLayout.class && cls != LinearLayout.class && cls != RelativeLayout.class) {
+			return false;
+		}
+		if (!view.willNotDraw()) {
+			return false;
+		}
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+			// getClipToPadding() is not there, only walk into it if it doesn't matter
+			ViewGroup group = (ViewGroup) view;
+			if ((group.getPaddingLeft() | group.getPaddingTop() | group.getPaddingRight() | group.getPaddingBottom()) != 0) {
+				return false;
+			}
+		}
+		if (cls == FrameLayout.class) {
+			return ((FrameLayout) view).getForeground() == null;
+		}
+		return Build.VERSION.SDK_INT < Build.VERSION_CODES.M || view.getForeground() == null;
+	}
+
+	/**
+	 * Same as View.draw(Canvas, ViewGroup, long) does in software: from the parent's
+	 * content coordinates to the child's
+	 *
+	 * @param depth of the child, its matrix is set from the parent's
+	 * @return false if culled, the child is entirely out of the clip
+	 */
+	private boolean transformToChild(ViewGroup parent, View child, Canvas canvas, boolean cull, int depth) {
+		final Matrix tracked = getMatrix(depth);
+		tracked.set(getMatrix(depth - 1));
+		canvas.translate(child.getLeft(), child.getTop());
+		tracked.preTranslate(child.getLeft(), child.getTop());
+		float alpha = child.getAlpha();
+		Animation animation = getRunningAnimation(child);
+		if (animation != null) {
+			// the parent has run it at its drawing time already, the same time gives the same result
+			mTransformation.clear();
+			animation.getTransformation(parent.getDrawingTime(), mTransformation);
+			canvas.concat(mTransformation.getMatrix());
+			tracked.preConcat(mTransformation.getMatrix());
+			alpha *= mTransformation.getAlpha();
+		}
+		Matrix matrix = child.getMatrix();
+		if (!matrix.isIdentity()) {
+			canvas.concat(matrix);
+			tracked.preConcat(matrix);
+		}
+		final int width = child.getWidth();
+		final int height = child.getHeight();
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2 || parent.getClipChildren()) {
+			// can't tell where it draws if it is not clipped
+			if (cull && canvas.quickReject(0, 0, width, height, Canvas.EdgeType.AA)) {
+				return false;
+			}
+			canvas.clipRect(0, 0, width, height);
+		}
+		if (alpha < 1) {
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+				canvas.saveLayerAlpha(0, 0, width, height, (int) (alpha * 255));
+			} else {
+				saveLayerAlphaLegacy(canvas, width, height, (int) (alpha * 255));
+			}
+		}
+		canvas.translate(-child.getScrollX(), -child.getScrollY());
+		tracked.preTranslate(-child.getScrollX(), -child.getScrollY());
+		return true;
+	}
+
+	@SuppressWarnings("deprecation")
+	private static void saveLayerAlphaLegacy(Canvas canvas, int width, int height, int alpha) {
+		canvas.saveLayerAlpha(0, 0, width, height, alpha, Canvas.ALL_SAVE_FLAG);
+	}
+
+	private static void clipToPadding(ViewGroup group, Canvas canvas) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && group.getClipToPadding()) {
+			int sx = group.getScrollX();
+			int sy = group.getScrollY();
+			canvas.clipRect(sx + group.getPaddingLeft(), sy + group.getPaddingTop(),
+					sx + group.getWidth() - group.getPaddingRight(), sy + group.getHeight() - group.getPaddingBottom());
+		}
+	}
+
+	private static void drawBackground(View view, Canvas canvas) {
+		Drawable background = view.getBackground();
+		if (background == null) {
+			return;
+		}
+		int sx = view.getScrollX();
+		int sy = view.getScrollY();
+		if ((sx | sy) == 0) {
+			background.draw(canvas);
+		} else {
+			canvas.translate(sx, sy);
+			background.draw(canvas);
+			canvas.translate(-sx, -sy);
+		}
+	}
+}
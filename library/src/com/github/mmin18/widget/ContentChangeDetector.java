@@ -0,0 +1,152 @@
+package com.github.mmin18.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import java.nio.IntBuffer;
+
+/**
+ * Tells if the captured bitmap changed since the last frame by comparing a hash of
+ * each row, so the blur can be skipped when the content behind the view is the same.
+ * It also finds the bounds of the change, so only that part has to be blurred again.
+ */
+final class ContentChangeDetector {
+	private int mWidth, mHeight;
+	// current and last frame, swapped on every update
+	private int[] mPixels, mLastPixels;
+	private IntBuffer mPixelBuffer, mLastPixelBuffer;
+	private long[] mRowHashes;
+	private boolean mValid;
+	private int mHits, mMisses;
+
+	/**
+	 * @return true if the bitmap is different from the last one, or there is nothing to compare with
+	 */
+	boolean update(Bitmap bitmap) {
+		return update(bitmap, null);
+	}
+
+	/**
+	 * @param changed if not null, set to the bounds of the changed pixels (the whole bitmap
+	 *                if there is nothing to compare with)
+	 * @return true if the bitmap is different from the last one, or there is nothing to compare with
+	 */
+	boolean update(Bitmap bitmap, Rect changed) {
+		final int width = bitmap.getWidth();
+		final int height = bitmap.getHeight();
+		if (mPixels == null || mWidth != width || mHeight != height) {
+			mWidth = width;
+			mHeight = height;
+			mPixels = new int[width * height];
+			mPixelBuffer = IntBuffer.wrap(mPixels);
+			mLastPixels = new int[width * height];
+			mLastPixelBuffer = IntBuffer.wrap(mLastPixels);
+			mRowHashes = new long[height];
+			mValid = false;
+		}
+
+		if (bitmap.getConfig() == Bitmap.Config.ARGB_8888) {
+			mPixelBuffer.rewind();
+			bitmap.copyPixelsToBuffer(mPixelBuffer);
+		} else {
+			// RGB_565 and ALPHA_8 are packed 2 or 1 bytes a pixel, rows don't line up with the ints
+			bitmap.getPixels(mPixels, 0, width, 0, 0, width, height);
+		}
+
+		final int[] pixels = mPixels;
+		final int[] lastPixels = mLastPixels;
+		int top = height, bottom = 0, left = width, right = 0;
+		for (int y = 0, i = 0; y < height; y++) {
+			// FNV-1a
+			long hash = 0xcbf29ce484222325L;
+			for (int end = i + width; i < end; i++) {
+				hash = (hash ^ pixels[i]) * 0x100000001b3L;
+			}
+			if (mRowHashes[y] != hash) {
+				mRowHashes[y] = hash;
+				if (top > y) {
+					top = y;
+				}
+				bottom = y + 1;
+				if (mValid && changed != null) {
+					// narrow down the columns, only look outside of what we already have
+					int row = y * width;
+					int x = 0;
+					while (x < left && pixels[row + x] == lastPixels[row + x]) {
+						x++;
+					}
+					left = x;
+					x = width;
+					while (x > right && pixels[row + x - 1] == lastPixels[row + x - 1]) {
+						x--;
+					}
+					right = x;
+				}
+			}
+		}
+
+		if (!mValid) {
+			top = 0;
+			bottom = height;
+		}
+		if (!mValid || changed == null) {
+			left = 0;
+			right = width;
+		}
+		mValid = true;
+
+		// keep this frame to compare with the next one
+		int[] tmp = mPixels;
+		mPixels = mLastPixels;
+		mLastPixels = tmp;
+		IntBuffer tmpBuffer = mPixelBuffer;
+		mPixelBuffer = mLastPixelBuffer;
+		mLastPixelBuffer = tmpBuffer;
+
+		if (top < bottom) {
+			if (changed != null) {
+				changed.set(left, top, right, bottom);
+			}
+			mMisses++;
+			return true;
+		} else {
+			if (changed != null) {
+				changed.setEmpty();
+			}
+			mHits++;
+			return false;
+		}
+	}
+
+	/**
+	 * Forget the last frame, the next update() always reports a change
+	 */
+	void reset() {
+		mValid = false;
+	}
+
+	/**
+	 * Drop the frames, they are allocated again by the next update()
+	 */
+	void release() {
+		mPixels = null;
+		mLastPixels = null;
+		mPixelBuffer = null;
+		mLastPixelBuffer = null;
+		mRowHashes = null;
+		mValid = false;
+	}
+
+	int getHits() {
+		return mHits;
+	}
+
+	int getMisses() {
+		return mMisses;
+	}
+
+	void resetStats() {
+		mHits = 0;
+		mMisses = 0;
+	}
+}
@@ -0,0 +1,96 @@
+package com.github.mmin18.widget;
+
+/**
+ * Scales the downsample factor of a blur view to keep capture + blur time under a budget.
+ * <p>
+ * The factor goes up one step after a few frames over budget, and down (sharper) only
+ * after many frames where the cost predicted for the smaller factor is still well under
+ * the budget, so it settles instead of bouncing between two steps. The bitmaps of each
+ * size go back to BlurBitmapPool when it steps, and are reused when it steps back.
+ */
+final class DownsampleGovernor {
+	private static final float[] SCALES = {0.5f, 0.75f, 1, 1.5f, 2, 3, 4};
+	private static final int DEFAULT_LEVEL = 2;
+	// frames in a row before stepping
+	private static final int STEP_UP_FRAMES = 5;
+	private static final int STEP_DOWN_FRAMES = 30;
+	// the cost predicted for a sharper step must be under this part of the budget
+	private static final float STEP_DOWN_HEADROOM = 0.8f;
+
+	private final long mBudget;
+	private long mCaptureTime;
+	private float mAverage;
+	private int mLevel = DEFAULT_LEVEL;
+	private int mOver, mUnder;
+	private int mSteps;
+
+	/**
+	 * @param budget capture + blur time per frame in nanoseconds
+	 */
+	DownsampleGovernor(long budget) {
+		mBudget = budget;
+	}
+
+	long getBudget() {
+		return mBudget;
+	}
+
+	/**
+	 * @return multiplier of the downsample factor
+	 */
+	synchronized float getScale() {
+		return SCALES[mLevel];
+	}
+
+	/**
+	 * @return how many times the scale changed
+	 */
+	synchronized int getStepCount() {
+		return mSteps;
+	}
+
+	synchronized void addCaptureTime(long nanos) {
+		mCaptureTime = nanos;
+	}
+
+	/**
+	 * Ends a frame, may be called on the async worker
+	 */
+	synchronized void addBlurTime(long nanos) {
+		long cost = mCaptureTime + nanos;
+		mCaptureTime = 0;
+		// exponential moving average, a single slow frame (GC, page in) doesn't count much
+		mAverage = mAverage == 0 ? cost : mAverage * 0.8f + cost * 0.2f;
+
+		if (mAverage > mBudget) {
+			mUnder = 0;
+			if (++mOver >= STEP_UP_FRAMES && mLevel < SCALES.length - 1) {
+				step(mLevel + 1);
+			}
+		} else if (mLevel > 0 && predict(mLevel - 1) < mBudget * STEP_DOWN_HEADROOM) {
+			mOver = 0;
+			if (++mUnder >= STEP_DOWN_FRAMES) {
+				step(mLevel - 1);
+			}
+		} else {
+			mOver = 0;
+			mUnder = 0;
+		}
+	}
+
+	// cost goes with the pixel count
+	private float predict(int level) {
+		float ratio = SCALES[mLevel] / SCALES[level];
+		return mAverage * ratio * ratio;
+	}
+
+	private void step(int level) {
+		// scale the average to the new size rather than starting over
+		float ratio = SCALES[mLevel] / SCALES[level];
+		mAverage = mAverage * ratio * ratio;
+		mLevel = level;
+		mOver = 0;
+		mUnder = 0;
+		mSteps++;
+	}
+}
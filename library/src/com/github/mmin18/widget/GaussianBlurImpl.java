@@ -0,0 +1,73 @@
+package com.github.mmin18.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import com.github.mmin18.blur.GaussianBlur;
+
+/**
+ * Pure java blur for the RGB_565 and ALPHA_8 bitmaps RenderScript can't blur, with the same
+ * gaussian as ScriptIntrinsicBlur, so they look like the ARGB_8888 ones.
+ * <p>
+ * The radius isn't rounded to a whole pixel, the weights of an animated radius come from
+ * GaussianKernelCache.
+ */
+class GaussianBlurImpl implements BlurImpl {
+	private final GaussianBlur mBlur = new GaussianBlur(true);
+	private float mRadius;
+	private int mWidth, mHeight;
+	private Bitmap.Config mConfig;
+	// colors of the bitmap, opaque for RGB_565 and only alpha for ALPHA_8
+	private int[] mPixels, mOutput;
+	// ALPHA_8 is blurred as a single channel
+	private byte[] mAlpha, mAlphaOutput;
+
+	@Override
+	public boolean prepare(Context context, Bitmap buffer, float radius) {
+		Bitmap.Config config = buffer.getConfig();
+		if (config != Bitmap.Config.RGB_565 && config != Bitmap.Config.ALPHA_8) {
+			return false;
+		}
+		int width = buffer.getWidth();
+		int height = buffer.getHeight();
+		if (mPixels == null || mPixels.length != width * height) {
+			mPixels = new int[width * height];
+			mOutput = new int[width * height];
+		}
+		if (config == Bitmap.Config.ALPHA_8 && (mAlpha == null || mAlpha.length != width * height)) {
+			mAlpha = new byte[width * height];
+			mAlphaOutput = new byte[width * height];
+		}
+		mRadius = Math.max(0, Math.min(25, radius));
+		mConfig = config;
+		mWidth = width;
+		mHeight = height;
+		return true;
+	}
+
+	@Override
+	public void release() {
+		mPixels = null;
+		mOutput = null;
+		mAlpha = null;
+		mAlphaOutput = null;
+	}
+
+	@Override
+	public void blur(Bitmap input, Bitmap output) {
+		final int size = mWidth * mHeight;
+		input.getPixels(mPixels, 0, mWidth, 0, 0, mWidth, mHeight);
+		if (mConfig == Bitmap.Config.RGB_565) {
+			mBlur.blur(mPixels, mOutput, mWidth, mHeight, mRadius);
+		} else {
+			for (int i = 0; i < size; i++) {
+				mAlpha[i] = (byte) (mPixels[i] >>> 24);
+			}
+			mBlur.blur(mAlpha, mAlphaOutput, mWidth, mHeight, mRadius);
+			for (int i = 0; i < size; i++) {
+				mOutput[i] = mAlphaOutput[i] << 24;
+			}
+		}
+		output.setPixels(mOutput, 0, mWidth, 0, 0, mWidth, mHeight);
+	}
+}
@@ -0,0 +1,80 @@
+package com.github.mmin18.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import com.github.mmin18.blur.PyramidBlur;
+import com.github.mmin18.blur.StackBlur;
+
+import java.nio.IntBuffer;
+
+/**
+ * Pure java blur for radius larger than 25, see PyramidBlur. Used by RealtimeBlurView
+ * in BLUR_MODE_PYRAMID instead of increasing the downsample factor.
+ */
+class PyramidBlurImpl implements BlurImpl {
+	private int mRadius, mLevels;
+	private int mWidth, mHeight;
+	// mLevelPixels[0] is the input, and the output after upsampling
+	private int[][] mLevelPixels;
+	private int[] mScratch;
+	private IntBuffer mPixelBuffer;
+	private final int[] mStack = new int[2 * StackBlur.MAX_RADIUS + 1];
+
+	@Override
+	public boolean prepare(Context context, Bitmap buffer, float radius) {
+		if (buffer.getConfig() != Bitmap.Config.ARGB_8888) {
+			return false;
+		}
+		int width = buffer.getWidth();
+		int height = buffer.getHeight();
+		int levels = PyramidBlur.getLevels(radius);
+		if (mLevelPixels == null || mLevels != levels || mWidth != width || mHeight != height) {
+			mLevelPixels = new int[levels + 1][];
+			for (int i = 0; i <= levels; i++) {
+				mLevelPixels[i] = new int[PyramidBlur.getLevelSize(width, i) * PyramidBlur.getLevelSize(height, i)];
+			}
+			mScratch = new int[mLevelPixels[levels].length];
+			mPixelBuffer = IntBuffer.wrap(mLevelPixels[0]);
+		}
+		mLevels = levels;
+		mRadius = PyramidBlur.getLevelRadius(radius, levels);
+		mWidth = width;
+		mHeight = height;
+		return true;
+	}
+
+	@Override
+	public void release() {
+		mLevelPixels = null;
+		mScratch = null;
+		mPixelBuffer = null;
+	}
+
+	@Override
+	public void blur(Bitmap input, Bitmap output) {
+		mPixelBuffer.rewind();
+		input.copyPixelsToBuffer(mPixelBuffer);
+
+		for (int i = 0; i < mLevels; i++) {
+			PyramidBlur.downsample(mLevelPixels[i], PyramidBlur.getLevelSize(mWidth, i),
+					PyramidBlur.getLevelSize(mHeight, i), mLevelPixels[i + 1]);
+		}
+
+		if (mRadius > 0) {
+			int[] pixels = mLevelPixels[mLevels];
+			int w = PyramidBlur.getLevelSize(mWidth, mLevels);
+			int h = PyramidBlur.getLevelSize(mHeight, mLevels);
+			StackBlur.blurRows(pixels, mScratch, w, mRadius, 0, h, 0, w, mStack);
+			StackBlur.blurColumns(mScratch, pixels, w, h, mRadius, 0, w, 0, h, mStack);
+		}
+
+		for (int i = mLevels - 1; i >= 0; i--) {
+			PyramidBlur.upsample(mLevelPixels[i + 1], mLevelPixels[i],
+					PyramidBlur.getLevelSize(mWidth, i), PyramidBlur.getLevelSize(mHeight, i));
+		}
+
+		mPixelBuffer.rewind();
+		output.copyPixelsFromBuffer(mPixelBuffer);
+	}
+}
@@ -7,8 +7,11 @@ import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.TypedValue;
 import android.view.View;
@@ -23,19 +26,48 @@ import com.github.mmin18.realtimeblurview.R;
  * <li>realtimeBlurRadius (10dp)</li>
  * <li>realtimeDownsampleFactor (4)</li>
  * <li>realtimeOverlayColor (#aaffffff)</li>
+ * <li>realtimeBlurMode (clamp)</li>
+ * <li>realtimeAdaptiveBudget (0, disabled)</li>
+ * <li>realtimeMaxRefreshRate (0, unlimited)</li>
+ * <li>realtimeSnapshot (false)</li>
+ * <li>realtimeBitmapConfig (argb_8888)</li>
+ * <li>realtimeTiled (false)</li>
+ * <li>realtimeRenderEffect (false)</li>
  * </ul>
  */
 public class RealtimeBlurView extends View {
 
+	/**
+	 * Radius larger than 25 (after downsampling) increases the downsample factor
+	 */
+	public static final int BLUR_MODE_CLAMP = 0;
+	/**
+	 * Radius larger than 25 (after downsampling) is blurred on a pyramid of halved levels,
+	 * and scaled back to the downsampled size, see PyramidBlur
+	 */
+	public static final int BLUR_MODE_PYRAMID = 1;
+
 	private float mDownsampleFactor; // default 4
 	private int mOverlayColor; // default #aaffffff
 	private float mBlurRadius; // default 10dp (0 < r <= 25)
+	private int mBlurMode; // default BLUR_MODE_CLAMP
 
 	private final BlurImpl mBlurImpl;
+	// what mBlurImpl can do, null if getBlurImpl() is overridden
+	private BlurImplRegistry.Backend mBackend;
+	// null unless a radius larger than 25 is needed in BLUR_MODE_PYRAMID
+	private PyramidBlurImpl mPyramidBlurImpl;
+	private boolean mUsePyramid;
+	private Bitmap.Config mBitmapConfig = Bitmap.Config.ARGB_8888;
+	// null unless mBlurImpl can't blur mBitmapConfig
+	private BlurImplRegistry.Backend mFallbackBackend;
+	private BlurImpl mFallbackBlurImpl;
+	// the impl that prepared the bitmaps, mBlurImpl, mPyramidBlurImpl or mFallbackBlurImpl
+	private BlurImpl mActiveImpl;
 	private boolean mDirty;
 	private Bitmap mBitmapToBlur, mBlurredBitmap;
 	private Canvas mBlurringCanvas;
-	private boolean mIsRendering;
+	private final ContentCapture mCapture = new ContentCapture();
 	private Paint mPaint;
 	private final Rect mRectSrc = new Rect(), mRectDst = new Rect();
 	// mDecorView should be the root view of the activity (even if you are on a different window like a dialog)
@@ -43,86 +75,142 @@ public class RealtimeBlurView extends View {
 	// If the view is on different root view (usually means we are on a PopupWindow),
 	// we need to manually call invalidate() in onPreDraw(), otherwise we will not be able to see the changes
 	private boolean mDifferentRoot;
-	private static int RENDERING_COUNT;
-	private static int BLUR_IMPL;
+	// null unless setSkipUnchangedFrames(true)
+	private ContentChangeDetector mChangeDetector;
+	private boolean mIncrementalBlur;
+	private final Rect mChangedRect = new Rect();
+	private boolean mZeroCopy;
+	// null unless setAsyncBlur(true), blurs mBitmapToBlur into mBlurredBackBitmap and swaps it with mBlurredBitmap
+	private AsyncBlurPipeline mAsyncPipeline;
+	private Bitmap mBlurredBackBitmap;
+	// blurred by BlurCoordinator with the other views on the same decor view
+	private boolean mSharedCapture;
+	private Canvas mSharedCanvas;
+	// null unless setMetrics(), nothing is measured without it
+	private BlurMetrics mMetrics;
+	// null unless setAdaptiveBudget()
+	private DownsampleGovernor mGovernor;
+	// frames per second, 0 for every frame
+	private float mMaxRefreshRate;
+	private boolean mPauseWhenStill;
+	private long mLastRefreshTime;
+	private boolean mRefreshScheduled;
+	private int mRefreshCount, mSkippedRefreshCount;
+	// where the last frame was captured, for mPauseWhenStill
+	private final int[] mRefreshLocation = new int[2];
+	private int mRefreshWidth, mRefreshHeight;
+	private final int[] mStillLocation = new int[2];
+	private final Rect mVisibleRect = new Rect();
+	// a vsync may come a bit early, don't skip a frame for that
+	private static final long REFRESH_SLOP = 4;
+	private boolean mForceRefresh;
+	private boolean mSnapshotMode;
+	// the snapshot is blurred, the pre-draw listener is removed until refresh()
+	private boolean mSnapshotTaken;
+	private boolean mTiledBlur;
+	// null unless blurred in tiles, then mBitmapToBlur is tile sized and blurred into it
+	private Bitmap mTileBitmap;
+	private Canvas mTileCanvas;
+	private Paint mTilePaint;
+	private final BlurTiles mTiles = new BlurTiles();
+	private final Rect mTileWindow = new Rect(), mTileValid = new Rect(), mTileSrc = new Rect();
+	private boolean mRenderEffectBlur;
+	// drawBlurredBitmap() is overridden, it needs the bitmap
+	private final boolean mCustomDrawing = overridesDrawBlurredBitmap(getClass());
+	// null unless blurred with a RenderEffect, then there is no bitmap at all
+	private RenderEffectBlur mRenderEffect;
+	// null unless animateBlurRadius()
+	private BlurLadder mLadder;
+	// content scrolled behind the view since the last frame, see notifyContentScrolled(),
+	// mStrips has how far
+	private boolean mScrolled;
+	// mBlurredBitmap is a whole frame blurred at mBlurredRadius, captured at mBlurredX, mBlurredY
+	private boolean mBlurredValid;
+	private float mBlurredRadius;
+	private int mBlurredX, mBlurredY;
+	private final ScrollStrips mStrips = new ScrollStrips();
+	// null until the first scrolled frame, the strips are blurred with their own impl of the same backend
+	private BlurImplRegistry.Backend mStripBackend;
+	private BlurImpl mStripImpl;
+	private Bitmap mStripBitmap, mStripBlurredBitmap, mShiftBitmap;
+	private Canvas mStripCanvas, mShiftCanvas;
+	private Paint mShiftPaint;
 
 	public RealtimeBlurView(Context context, AttributeSet attrs) {
 		super(context, attrs);
 
 		mBlurImpl = getBlurImpl(); // provide your own by override getBlurImpl()
+		mActiveImpl = mBlurImpl;
 
 		TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.RealtimeBlurView);
 		mBlurRadius = a.getDimension(R.styleable.RealtimeBlurView_realtimeBlurRadius,
 				TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 10, context.getResources().getDisplayMetrics()));
 		mDownsampleFactor = a.getFloat(R.styleable.RealtimeBlurView_realtimeDownsampleFactor, 4);
 		mOverlayColor = a.getColor(R.styleable.RealtimeBlurView_realtimeOverlayColor, 0xAAFFFFFF);
+		mBlurMode = a.getInt(R.styleable.RealtimeBlurView_realtimeBlurMode, BLUR_MODE_CLAMP);
+		float budget = a.getFloat(R.styleable.RealtimeBlurView_realtimeAdaptiveBudget, 0);
+		mMaxRefreshRate = Math.max(0, a.getFloat(R.styleable.RealtimeBlurView_realtimeMaxRefreshRate, 0));
+		mSnapshotMode = a.getBoolean(R.styleable.RealtimeBlurView_realtimeSnapshot, false);
+		mTiledBlur = a.getBoolean(R.styleable.RealtimeBlurView_realtimeTiled, false);
+		mRenderEffectBlur = a.getBoolean(R.styleable.RealtimeBlurView_realtimeRenderEffect, false);
+		switch (a.getInt(R.styleable.RealtimeBlurView_realtimeBitmapConfig, 0)) {
+			case 1:
+				mBitmapConfig = Bitmap.Config.RGB_565;
+				break;
+			case 2:
+				mBitmapConfig = Bitmap.Config.ALPHA_8;
+				break;
+		}
 		a.recycle();
 
+		if (budget > 0) {
+			mGovernor = new DownsampleGovernor((long) (budget * 1000000));
+		}
+
 		mPaint = new Paint();
 	}
 
+	/**
+	 * The impl of the backend selected by BlurImplRegistry, override it to use another one
+	 */
 	protected BlurImpl getBlurImpl() {
-		if (BLUR_IMPL == 0) {
-			// try to use stock impl first
-			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
-				try {
-					AndroidStockBlurImpl impl = new AndroidStockBlurImpl();
-					Bitmap bmp = Bitmap.createBitmap(4, 4, Bitmap.Config.ARGB_8888);
-					impl.prepare(getContext(), bmp, 4);
-					impl.release();
-					bmp.recycle();
-					BLUR_IMPL = 3;
-				} catch (Throwable e) {
-				}
+		mBackend = BlurImplRegistry.select(getContext());
+		return mBackend.create();
+	}
+
+	/**
+	 * The largest radius the impl blurs, 25 if getBlurImpl() is overridden
+	 */
+	float getMaxBlurRadius() {
+		return mBackend != null ? mBackend.getMaxRadius() : 25;
+	}
+
+	/**
+	 * Find out which BlurImpl works on a background thread, so the first RealtimeBlurView
+	 * doesn't have to do it on the UI thread. Call it early, like in Application.onCreate().
+	 */
+	public static void prewarm(Context context) {
+		final Context appContext = context.getApplicationContext();
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				BlurImplRegistry.select(appContext);
 			}
-		}
-		if (BLUR_IMPL == 0) {
-			try {
-				getClass().getClassLoader().loadClass("androidx.renderscript.RenderScript");
-				// initialize RenderScript to load jni impl
-				// may throw unsatisfied link error
-				AndroidXBlurImpl impl = new AndroidXBlurImpl();
-				Bitmap bmp = Bitmap.createBitmap(4, 4, Bitmap.Config.ARGB_8888);
-				impl.prepare(getContext(), bmp, 4);
-				impl.release();
-				bmp.recycle();
-				BLUR_IMPL = 1;
-			} catch (Throwable e) {
-				// class not found or unsatisfied link
-			}
-		}
-		if (BLUR_IMPL == 0) {
-			try {
-				getClass().getClassLoader().loadClass("android.support.v8.renderscript.RenderScript");
-				// initialize RenderScript to load jni impl
-				// may throw unsatisfied link error
-				SupportLibraryBlurImpl impl = new SupportLibraryBlurImpl();
-				Bitmap bmp = Bitmap.createBitmap(4, 4, Bitmap.Config.ARGB_8888);
-				impl.prepare(getContext(), bmp, 4);
-				impl.release();
-				bmp.recycle();
-				BLUR_IMPL = 2;
-			} catch (Throwable e) {
-				// class not found or unsatisfied link
-			}
-		}
-		if (BLUR_IMPL == 0) {
-			// fallback to empty impl, which doesn't have blur effect
-			BLUR_IMPL = -1;
-		}
-		switch (BLUR_IMPL) {
-			case 1:
-				return new AndroidXBlurImpl();
-			case 2:
-				return new SupportLibraryBlurImpl();
-			case 3:
-				return new AndroidStockBlurImpl();
-			default:
-				return new EmptyBlurImpl();
-		}
+		}, "RealtimeBlurView-prewarm").start();
+	}
+
+	public float getBlurRadius() {
+		return mBlurRadius;
+	}
+
+	public float getDownsampleFactor() {
+		return mDownsampleFactor;
 	}
 
 	public void setBlurRadius(float radius) {
+		if (mLadder != null) {
+			endRadiusAnimation();
+		}
 		if (mBlurRadius != radius) {
 			mBlurRadius = radius;
 			mDirty = true;
@@ -130,6 +218,36 @@ public class RealtimeBlurView extends View {
 		}
 	}
 
+	/**
+	 * Animate the blur radius, like a blur-in behind a dialog. The content behind the view
+	 * is captured once and blurred at a few radii, and the frames cross-fade between them,
+	 * so the content stays the same during the animation. The view refreshes as usual at
+	 * the end. setBlurRadius() stops it.
+	 * <p>
+	 * In async mode, with shared capture, tiles or a RenderEffect, the radius is set on
+	 * every frame instead.
+	 */
+	public void animateBlurRadius(float from, float to, long duration) {
+		if (from < 0 || to < 0) {
+			throw new IllegalArgumentException("Blur radius must not be negative.");
+		}
+		endRadiusAnimation();
+		mLadder = new BlurLadder(from, to, duration);
+		if (mAsyncPipeline != null || mSharedCapture || useRenderEffect() || Math.max(from, to) == 0) {
+			mLadder.setFallback();
+			mBlurRadius = from;
+		} else {
+			// the downsample factor is picked for the larger radius, and used by all levels
+			mBlurRadius = Math.max(from, to);
+		}
+		mDirty = true;
+		refresh();
+	}
+
+	public boolean isAnimatingBlurRadius() {
+		return mLadder != null;
+	}
+
 	public void setDownsampleFactor(float factor) {
 		if (factor <= 0) {
 			throw new IllegalArgumentException("Downsample factor must be greater than 0.");
@@ -143,27 +261,661 @@ public class RealtimeBlurView extends View {
 		}
 	}
 
+	/**
+	 * Adjust the downsample factor (from half to 4 times the one set) to keep the capture
+	 * and blur of a frame within the budget. Slow devices get a blurrier bitmap, fast
+	 * ones a sharper one.
+	 *
+	 * @param millis capture + blur time per frame, 0 to disable
+	 * @see #getEffectiveDownsampleFactor()
+	 */
+	public void setAdaptiveBudget(float millis) {
+		long budget = (long) (millis * 1000000);
+		if (mGovernor == null ? budget <= 0 : mGovernor.getBudget() == budget) {
+			return;
+		}
+		awaitAsyncBlur();
+		mGovernor = budget > 0 ? new DownsampleGovernor(budget) : null;
+		invalidate();
+	}
+
+	/**
+	 * @return downsample factor used for the next frame, with the adaptive budget applied
+	 */
+	public float getEffectiveDownsampleFactor() {
+		float factor = mDownsampleFactor;
+		if (mGovernor != null) {
+			factor = Math.max(1, factor * mGovernor.getScale());
+		}
+		return factor;
+	}
+
+	/**
+	 * Blur at most this many frames per second, the last blurred bitmap is shown in
+	 * between. A frosted glass over an animation often looks the same at 30 fps.
+	 *
+	 * @param fps 0 to blur on every frame
+	 */
+	public void setMaxRefreshRate(float fps) {
+		mMaxRefreshRate = Math.max(0, fps);
+	}
+
+	public float getMaxRefreshRate() {
+		return mMaxRefreshRate;
+	}
+
+	/**
+	 * Don't blur again while the view doesn't move or resize on screen. For views over
+	 * content that only changes when the view moves, like a card dragged over a wallpaper.
+	 */
+	public void setPauseWhenStill(boolean enabled) {
+		mPauseWhenStill = enabled;
+	}
+
+	/**
+	 * @return frames captured and blurred
+	 */
+	public int getRefreshCount() {
+		return mRefreshCount;
+	}
+
+	/**
+	 * @return frames that showed the last blurred bitmap, since the view was throttled,
+	 * still, hidden, off screen, or its window didn't have focus
+	 */
+	public int getSkippedRefreshCount() {
+		return mSkippedRefreshCount;
+	}
+
+	/**
+	 * Blur once and freeze, for content that doesn't change while the view is shown, like
+	 * behind a dialog or a bottom sheet. After the first frame the view stops listening to
+	 * pre-draw, and frees the capture bitmap and the BlurImpl, keeping only the blurred
+	 * bitmap. Call refresh() to take a new snapshot. Views with setSharedCapture(true)
+	 * keep blurring with their group.
+	 */
+	public void setSnapshotMode(boolean enabled) {
+		if (mSnapshotMode == enabled) {
+			return;
+		}
+		mSnapshotMode = enabled;
+		if (!enabled && mSnapshotTaken) {
+			refresh();
+		}
+	}
+
+	public boolean isSnapshotMode() {
+		return mSnapshotMode;
+	}
+
+	/**
+	 * Capture and blur on the next frame, even if throttled, still, or in snapshot mode
+	 */
+	public void refresh() {
+		mForceRefresh = true;
+		if (mSnapshotTaken) {
+			mSnapshotTaken = false;
+			registerPreDraw();
+		}
+		// the pre-draw listener is on the decor view's window
+		View decor = mDecorView;
+		if (mDifferentRoot && decor != null) {
+			decor.invalidate();
+		} else {
+			invalidate();
+		}
+	}
+
+	/**
+	 * Keep only what onDraw() shows, and stop capturing until refresh()
+	 */
+	private void freezeSnapshot() {
+		if (!mSnapshotMode || mSnapshotTaken || mDecorView == null) {
+			return;
+		}
+		awaitAsyncBlur();
+		unregisterPreDraw();
+		mSnapshotTaken = true;
+
+		if (mBitmapToBlur != null) {
+			BlurBitmapPool.put(mBitmapToBlur);
+			mBitmapToBlur = null;
+		}
+		mBlurringCanvas = null;
+		releaseTileBitmap();
+		releaseStripBitmap();
+		if (mChangeDetector != null) {
+			// two frames of ints, the size of the capture
+			mChangeDetector.release();
+		}
+		if (mAsyncPipeline != null) {
+			Bitmap front = mAsyncPipeline.getFront();
+			BlurBitmapPool.put(front == mBlurredBitmap ? mBlurredBackBitmap : mBlurredBitmap);
+			mBlurredBitmap = front;
+			mBlurredBackBitmap = null;
+			mAsyncPipeline.setBuffers(front, null);
+		}
+		mBlurImpl.release();
+		if (mPyramidBlurImpl != null) {
+			mPyramidBlurImpl.release();
+		}
+		if (mFallbackBlurImpl != null) {
+			mFallbackBlurImpl.release();
+		}
+		if (mStripImpl != null) {
+			mStripImpl.release();
+			mStripImpl = null;
+			mStripBackend = null;
+		}
+		mDirty = true;
+	}
+
+	private final Runnable freezeSnapshot = new Runnable() {
+		@Override
+		public void run() {
+			freezeSnapshot();
+		}
+	};
+
+	/**
+	 * Called before each frame is captured
+	 *
+	 * @return false to show the last blurred bitmap
+	 */
+	private boolean shouldRefresh() {
+		if (mForceRefresh) {
+			mForceRefresh = false;
+			return true;
+		}
+		if (mRefreshCount == 0 || mBlurredBitmap == null) {
+			// nothing to show yet
+			return true;
+		}
+		if (!isShown() || !getGlobalVisibleRect(mVisibleRect)) {
+			return false;
+		}
+		if (!mDifferentRoot && !hasWindowFocus()) {
+			// usually covered by a dialog, onWindowFocusChanged() refreshes when it's back.
+			// A view on another window (like a PopupWindow) may never have focus
+			return false;
+		}
+		if (mPauseWhenStill) {
+			getLocationOnScreen(mStillLocation);
+			if (mStillLocation[0] == mRefreshLocation[0] && mStillLocation[1] == mRefreshLocation[1]
+					&& getWidth() == mRefreshWidth && getHeight() == mRefreshHeight) {
+				return false;
+			}
+		}
+		if (mMaxRefreshRate > 0) {
+			long interval = (long) (1000 / mMaxRefreshRate);
+			long elapsed = SystemClock.uptimeMillis() - mLastRefreshTime;
+			if (elapsed + REFRESH_SLOP < interval) {
+				// make sure the latest content gets blurred even if nothing draws after it
+				if (!mRefreshScheduled) {
+					mRefreshScheduled = true;
+					postDelayed(scheduledRefresh, interval - elapsed);
+				}
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void onRefreshed() {
+		mRefreshCount++;
+		mLastRefreshTime = SystemClock.uptimeMillis();
+		if (mPauseWhenStill) {
+			getLocationOnScreen(mRefreshLocation);
+			mRefreshWidth = getWidth();
+			mRefreshHeight = getHeight();
+		}
+	}
+
+	private final Runnable scheduledRefresh = new Runnable() {
+		@Override
+		public void run() {
+			mRefreshScheduled = false;
+			// the pre-draw listener is on the decor view's window
+			View decor = mDecorView;
+			if (mDifferentRoot && decor != null) {
+				decor.invalidate();
+			} else {
+				invalidate();
+			}
+		}
+	};
+
+	@Override
+	public void onWindowFocusChanged(boolean hasWindowFocus) {
+		super.onWindowFocusChanged(hasWindowFocus);
+		if (hasWindowFocus) {
+			invalidate();
+		}
+	}
+
+	public int getBlurMode() {
+		return mBlurMode;
+	}
+
+	/**
+	 * @param mode BLUR_MODE_CLAMP or BLUR_MODE_PYRAMID
+	 */
+	public void setBlurMode(int mode) {
+		if (mode != BLUR_MODE_CLAMP && mode != BLUR_MODE_PYRAMID) {
+			throw new IllegalArgumentException("Unknown blur mode " + mode);
+		}
+		if (mBlurMode != mode) {
+			mBlurMode = mode;
+			mDirty = true; // may also change downsample factor
+			releaseBitmap();
+			invalidate();
+		}
+	}
+
+	/**
+	 * Config of the capture and blurred bitmaps, ARGB_8888 by default. RGB_565 takes half
+	 * the memory and ALPHA_8 a quarter.
+	 * <p>
+	 * RGB_565 has no alpha, the area not covered by the views behind is the overlay color
+	 * (opaque) instead of transparent. ALPHA_8 only blurs the coverage of the views behind,
+	 * and draws it in the overlay color. The overlay color is drawn on top with its alpha
+	 * in both cases.
+	 * <p>
+	 * RenderScript only blurs ARGB_8888, the others are blurred by GaussianBlurImpl with the
+	 * same gaussian, or by StackBlurImpl if it is the selected backend. Pyramid mode (radius
+	 * larger than 25) and shared capture always use ARGB_8888.
+	 */
+	public void setBitmapConfig(Bitmap.Config config) {
+		if (config != Bitmap.Config.ARGB_8888 && config != Bitmap.Config.RGB_565 && config != Bitmap.Config.ALPHA_8) {
+			throw new IllegalArgumentException("Unsupported bitmap config " + config);
+		}
+		if (mBitmapConfig != config) {
+			mBitmapConfig = config;
+			mDirty = true;
+			releaseBitmap();
+			invalidate();
+		}
+	}
+
+	public Bitmap.Config getBitmapConfig() {
+		return mBitmapConfig;
+	}
+
+	/**
+	 * Capture and blur in tiles of 256 x 256 pixels (after downsampling) plus the blur
+	 * radius on each side, for big views with a small downsample factor, like full screen
+	 * on a tablet. Only the blurred bitmap is the size of the view, the capture bitmap and
+	 * the buffers of the BlurImpl are tile sized. The result is the same as without tiles.
+	 * <p>
+	 * The views behind are drawn once for each tile. It is not used when the view fits in a
+	 * tile, in async mode, or in pyramid mode (radius larger than 25), and the frames are
+	 * not compared for setSkipUnchangedFrames().
+	 */
+	public void setTiledBlur(boolean enabled) {
+		if (mTiledBlur != enabled) {
+			mTiledBlur = enabled;
+			mDirty = true;
+			releaseBitmap();
+			invalidate();
+		}
+	}
+
+	public boolean isTiledBlur() {
+		return mTiledBlur;
+	}
+
+	/**
+	 * Tell the view the content behind it scrolled, like from RecyclerView.OnScrollListener
+	 * onScrolled() or View.OnScrollChangeListener (the scroll position change). On the next
+	 * frame the last blurred bitmap is moved with the content, and only a strip at each
+	 * edge (what scrolled in plus the blur radius) is captured and blurred again, see
+	 * ScrollStrips. Call it for every scroll step of the content behind the view.
+	 * <p>
+	 * Only what scrolls is updated on such a frame, anything else that changed behind the
+	 * view shows on the next frame without a scroll. The view blurs everything as usual if
+	 * the content scrolled on both axes or more than a strip, if the view moved, in async,
+	 * tiled or pyramid mode, and with an overridden getBlurImpl(). The strips are not blurred
+	 * with an overridden blur().
+	 *
+	 * @param dx scrolled right in view pixels, the content moves left
+	 * @param dy scrolled down in view pixels, the content moves up
+	 */
+	public void notifyContentScrolled(int dx, int dy) {
+		if (dx != 0 || dy != 0) {
+			mStrips.scroll(dx, dy);
+			mScrolled = true;
+		}
+	}
+
+	/**
+	 * On API 31+ with hardware acceleration, blur on the GPU with a RenderEffect instead of
+	 * drawing the views behind into a bitmap, see RenderEffectBlur. The downsample factor
+	 * and the other bitmap options don't apply.
+	 * <p>
+	 * It is not used in snapshot mode, with shared capture, on another window than the
+	 * activity (like a PopupWindow), or if a subclass overrides drawBlurredBitmap(), since
+	 * there is no bitmap to draw. The view blurs with the BlurImpl as usual then, and
+	 * below API 31.
+	 */
+	public void setRenderEffectBlur(boolean enabled) {
+		if (mRenderEffectBlur != enabled) {
+			mRenderEffectBlur = enabled;
+			invalidate();
+		}
+	}
+
+	public boolean isRenderEffectBlur() {
+		return mRenderEffectBlur;
+	}
+
+	/**
+	 * @return true if the last frame was blurred with a RenderEffect
+	 */
+	public boolean isRenderEffectActive() {
+		return mRenderEffect != null;
+	}
+
+	boolean useRenderEffect() {
+		// an ancestor drawing itself (dividers, decorations) is only captured on a bitmap
+		return mRenderEffectBlur && mBlurRadius > 0 && !mSnapshotMode && !mSharedCapture && !mDifferentRoot
+				&& !mCustomDrawing && isHardwareAccelerated() && RenderEffectBlur.isAvailable()
+				&& (mDecorView == null || !ContentCapture.hasAncestorDrawingItself(mDecorView, this));
+	}
+
+	/**
+	 * @return true if a subclass overrides drawBlurredBitmap(), like to draw a custom shape
+	 */
+	private static boolean overridesDrawBlurredBitmap(Class<?> cls) {
+		for (Class<?> c = cls; c != RealtimeBlurView.class; c = c.getSuperclass()) {
+			try {
+				c.getDeclaredMethod("drawBlurredBitmap", Canvas.class, Bitmap.class, int.class);
+				return true;
+			} catch (NoSuchMethodException e) {
+			}
+		}
+		return false;
+	}
+
+	public int getOverlayColor() {
+		return mOverlayColor;
+	}
+
 	public void setOverlayColor(int color) {
 		if (mOverlayColor != color) {
 			mOverlayColor = color;
+			// erased with it before capture
+			mBlurredValid = false;
+			invalidate();
+		}
+	}
+
+	/**
+	 * Blur straight from / into the bitmaps with shared allocations instead of copying
+	 * them on every frame. Only RenderScript impls support it, and they fallback to copy
+	 * automatically if the driver rejects shared allocations.
+	 *
+	 * @see #isZeroCopyBlur()
+	 */
+	public void setZeroCopyBlur(boolean enabled) {
+		mZeroCopy = enabled;
+		if (mBlurImpl instanceof ZeroCopyBlurImpl) {
+			awaitAsyncBlur();
+			// shared allocations are bound to one output bitmap, no use with double buffers
+			((ZeroCopyBlurImpl) mBlurImpl).setZeroCopy(enabled && mAsyncPipeline == null);
+		}
+	}
+
+	/**
+	 * @return true if the last frame was blurred without copying the bitmaps
+	 */
+	public boolean isZeroCopyBlur() {
+		return mBlurImpl instanceof ZeroCopyBlurImpl && ((ZeroCopyBlurImpl) mBlurImpl).isZeroCopy();
+	}
+
+	/**
+	 * Compare each captured frame with the last one, and skip the blur (reuse the last
+	 * blurred bitmap) if the content behind the view didn't change.
+	 */
+	public void setSkipUnchangedFrames(boolean enabled) {
+		awaitAsyncBlur();
+		if (enabled && mChangeDetector == null) {
+			mChangeDetector = new ContentChangeDetector();
+		} else if (!enabled && mAsyncPipeline == null) {
+			// async mode needs it to stop, see setAsyncBlur()
+			mChangeDetector = null;
+			mIncrementalBlur = false;
+		}
+	}
+
+	/**
+	 * Only blur again the part around what changed behind the view (implies
+	 * setSkipUnchangedFrames(true)). The whole content is still drawn into the
+	 * capture bitmap, since there is no way to tell what changed before drawing it.
+	 * Requires a BlurImpl that supports it like StackBlurImpl, otherwise it blurs the
+	 * whole bitmap as usual.
+	 */
+	public void setIncrementalBlur(boolean enabled) {
+		awaitAsyncBlur();
+		if (enabled) {
+			setSkipUnchangedFrames(true);
+		}
+		mIncrementalBlur = enabled;
+	}
+
+	/**
+	 * @return frames skipped since the content didn't change
+	 */
+	public int getUnchangedFrameCount() {
+		return mChangeDetector == null ? 0 : mChangeDetector.getHits();
+	}
+
+	/**
+	 * @return frames blurred since the content changed
+	 */
+	public int getChangedFrameCount() {
+		return mChangeDetector == null ? 0 : mChangeDetector.getMisses();
+	}
+
+	public void resetFrameCounts() {
+		if (mChangeDetector != null) {
+			mChangeDetector.resetStats();
+		}
+	}
+
+	/**
+	 * Blur on a background thread, the UI thread only draws the content into the capture
+	 * bitmap and shows the latest blurred frame. Frames captured while the last one is still
+	 * blurring are dropped. Implies setSkipUnchangedFrames(true), since showing a new frame
+	 * triggers another capture. Ignored if the backend is not async safe.
+	 */
+	public void setAsyncBlur(boolean enabled) {
+		if (mBackend != null && !mBackend.isAsyncSafe()) {
+			// the impl must be used on the UI thread
+			enabled = false;
+		}
+		if (enabled == (mAsyncPipeline != null)) {
+			return;
+		}
+		releaseBitmap();
+		if (enabled) {
+			setSkipUnchangedFrames(true);
+			mAsyncPipeline = new AsyncBlurPipeline(asyncCallback);
+		} else {
+			mAsyncPipeline = null;
+		}
+		setZeroCopyBlur(mZeroCopy);
+		invalidate();
+	}
+
+	// wait for the background thread before touching what it uses
+	private void awaitAsyncBlur() {
+		if (mAsyncPipeline != null) {
+			mAsyncPipeline.awaitIdle();
+		}
+	}
+
+	/**
+	 * Measure each frame: capture, erase, blur and draw time, bitmap size and the frames
+	 * skipped or failed. Pass null to stop measuring.
+	 */
+	public void setMetrics(BlurMetrics metrics) {
+		awaitAsyncBlur();
+		mMetrics = metrics;
+		if (metrics != null) {
+			metrics.setBackend(mBlurImpl.getClass().getSimpleName());
+		}
+	}
+
+	public BlurMetrics getMetrics() {
+		return mMetrics;
+	}
+
+	/**
+	 * @return views drawn into the capture bitmap in the last frame
+	 */
+	public int getCaptureDrawnViewCount() {
+		return mCapture.getDrawnCount();
+	}
+
+	/**
+	 * @return views skipped in the last frame since they are not behind this view
+	 */
+	public int getCaptureCulledViewCount() {
+		return mCapture.getCulledCount();
+	}
+
+	/**
+	 * Share the capture and the blur with the other blur views on the same window. Views
+	 * with the same blur radius and downsample factor that overlap are captured and blurred
+	 * together once per frame, and each view gets the part behind it.
+	 * <p>
+	 * Shared views don't use setSkipUnchangedFrames(), setIncrementalBlur(), setAsyncBlur(),
+	 * setZeroCopyBlur() or an overridden blur(). A view on another window (like a
+	 * PopupWindow) keeps blurring on its own.
+	 */
+	public void setSharedCapture(boolean enabled) {
+		if (mSharedCapture == enabled) {
+			return;
+		}
+		unregisterPreDraw();
+		releaseBitmap();
+		mSharedCapture = enabled;
+		registerPreDraw();
+		invalidate();
+	}
+
+	/**
+	 * Called by BlurCoordinator with the part of the shared blurred bitmap behind this view
+	 *
+	 * @param blurred null to clear the blurred bitmap
+	 */
+	void setSharedBlurredBitmap(Bitmap blurred, Rect src) {
+		if (blurred == null) {
+			if (mBlurredBitmap != null) {
+				releaseBitmap();
+				invalidate();
+			}
+			return;
+		}
+		final int width = Math.max(1, src.width());
+		final int height = Math.max(1, src.height());
+		boolean redrawBitmap = false;
+		if (mBlurredBitmap == null || mBlurredBitmap.getWidth() != width || mBlurredBitmap.getHeight() != height) {
+			releaseBitmap();
+			try {
+				mBlurredBitmap = BlurBitmapPool.obtain(width, height, Bitmap.Config.ARGB_8888);
+			} catch (OutOfMemoryError e) {
+				// Simply ignore and fallback
+				return;
+			}
+			if (mSharedCanvas == null) {
+				mSharedCanvas = new Canvas();
+			}
+			mSharedCanvas.setBitmap(mBlurredBitmap);
+			redrawBitmap = true;
+		}
+		mRectDst.set(0, 0, width, height);
+		mSharedCanvas.drawBitmap(blurred, src, mRectDst, null);
+		if (redrawBitmap) {
 			invalidate();
 		}
 	}
 
 	private void releaseBitmap() {
+		awaitAsyncBlur();
 		if (mBitmapToBlur != null) {
-			mBitmapToBlur.recycle();
+			BlurBitmapPool.put(mBitmapToBlur);
 			mBitmapToBlur = null;
 		}
 		if (mBlurredBitmap != null) {
-			mBlurredBitmap.recycle();
+			if (mSharedCanvas != null) {
+				mSharedCanvas.setBitmap(null);
+			}
+			BlurBitmapPool.put(mBlurredBitmap);
 			mBlurredBitmap = null;
 		}
+		if (mBlurredBackBitmap != null) {
+			BlurBitmapPool.put(mBlurredBackBitmap);
+			mBlurredBackBitmap = null;
+		}
+		releaseTileBitmap();
+		releaseStripBitmap();
+		mBlurredValid = false;
+		if (mLadder != null) {
+			// built again from the next capture
+			mLadder.release();
+		}
+		if (mAsyncPipeline != null) {
+			mAsyncPipeline.setBuffers(null, null);
+		}
+	}
+
+	private void releaseTileBitmap() {
+		if (mTileBitmap != null) {
+			mTileCanvas.setBitmap(null);
+			BlurBitmapPool.put(mTileBitmap);
+			mTileBitmap = null;
+		}
+	}
+
+	private void releaseStripBitmap() {
+		if (mStripBitmap != null) {
+			mStripCanvas.setBitmap(null);
+			BlurBitmapPool.put(mStripBitmap);
+			mStripBitmap = null;
+		}
+		if (mStripBlurredBitmap != null) {
+			BlurBitmapPool.put(mStripBlurredBitmap);
+			mStripBlurredBitmap = null;
+		}
+		if (mShiftBitmap != null) {
+			BlurBitmapPool.put(mShiftBitmap);
+			mShiftBitmap = null;
+		}
+	}
+
+	private void releaseRenderEffect() {
+		if (mRenderEffect != null) {
+			mRenderEffect.release();
+			mRenderEffect = null;
+		}
 	}
 
 	protected void release() {
 		releaseBitmap();
+		releaseRenderEffect();
 		mBlurImpl.release();
+		if (mPyramidBlurImpl != null) {
+			mPyramidBlurImpl.release();
+		}
+		if (mFallbackBlurImpl != null) {
+			mFallbackBlurImpl.release();
+		}
+		if (mStripImpl != null) {
+			mStripImpl.release();
+			mStripImpl = null;
+			mStripBackend = null;
+		}
 	}
 
 	protected boolean prepare() {
@@ -172,44 +924,89 @@ public class RealtimeBlurView extends View {
 			return false;
 		}
 
-		float downsampleFactor = mDownsampleFactor;
+		float downsampleFactor = getEffectiveDownsampleFactor();
 		float radius = mBlurRadius / downsampleFactor;
-		if (radius > 25) {
-			downsampleFactor = downsampleFactor * radius / 25;
-			radius = 25;
+		final float maxRadius = getMaxBlurRadius();
+		boolean usePyramid = radius > maxRadius && mBlurMode == BLUR_MODE_PYRAMID;
+		if (radius > maxRadius && !usePyramid) {
+			downsampleFactor = downsampleFactor * radius / maxRadius;
+			radius = maxRadius;
+		}
+		if (usePyramid != mUsePyramid) {
+			awaitAsyncBlur();
+			mUsePyramid = usePyramid;
+			mDirty = true;
 		}
 
+		final Bitmap.Config config = usePyramid ? Bitmap.Config.ARGB_8888 : mBitmapConfig;
 		final int width = getWidth();
 		final int height = getHeight();
 
 		int scaledWidth = Math.max(1, (int) (width / downsampleFactor));
 		int scaledHeight = Math.max(1, (int) (height / downsampleFactor));
 
+		// a blurred pixel depends on the pixels within the radius
+		final int halo = (int) Math.ceil(radius);
+		final boolean tiled = mTiledBlur && mAsyncPipeline == null && !usePyramid
+				&& Math.max(scaledWidth, scaledHeight) > BlurTiles.TILE_SIZE + 2 * halo;
+		final int captureWidth = tiled ? BlurTiles.getTileSize(scaledWidth, halo) : scaledWidth;
+		final int captureHeight = tiled ? BlurTiles.getTileSize(scaledHeight, halo) : scaledHeight;
+
 		boolean dirty = mDirty;
 
-		if (mBlurringCanvas == null || mBlurredBitmap == null
+		if (mBlurringCanvas == null || mBitmapToBlur == null || mBlurredBitmap == null
+				|| (mAsyncPipeline != null && mBlurredBackBitmap == null)
+				|| tiled != (mTileBitmap != null)
+				|| mBitmapToBlur.getWidth() != captureWidth
+				|| mBitmapToBlur.getHeight() != captureHeight
 				|| mBlurredBitmap.getWidth() != scaledWidth
-				|| mBlurredBitmap.getHeight() != scaledHeight) {
+				|| mBlurredBitmap.getHeight() != scaledHeight
+				|| mBlurredBitmap.getConfig() != config) {
 			dirty = true;
 			releaseBitmap();
 
 			boolean r = false;
 			try {
-				mBitmapToBlur = Bitmap.createBitmap(scaledWidth, scaledHeight, Bitmap.Config.ARGB_8888);
+				mBitmapToBlur = BlurBitmapPool.obtain(captureWidth, captureHeight, config);
 				if (mBitmapToBlur == null) {
 					return false;
 				}
 				mBlurringCanvas = new Canvas(mBitmapToBlur);
 
-				mBlurredBitmap = Bitmap.createBitmap(scaledWidth, scaledHeight, Bitmap.Config.ARGB_8888);
+				mBlurredBitmap = BlurBitmapPool.obtain(scaledWidth, scaledHeight, config);
 				if (mBlurredBitmap == null) {
 					return false;
 				}
 
+				if (tiled) {
+					mTileBitmap = BlurBitmapPool.obtain(captureWidth, captureHeight, config);
+					if (mTileBitmap == null) {
+						return false;
+					}
+					if (mTileCanvas == null) {
+						mTileCanvas = new Canvas();
+						// replace the pixels of the last frame
+						mTilePaint = new Paint();
+						mTilePaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+					}
+					mTileCanvas.setBitmap(mBlurredBitmap);
+				}
+
+				if (mAsyncPipeline != null) {
+					mBlurredBackBitmap = BlurBitmapPool.obtain(scaledWidth, scaledHeight, config);
+					if (mBlurredBackBitmap == null) {
+						return false;
+					}
+					mAsyncPipeline.setBuffers(mBlurredBitmap, mBlurredBackBitmap);
+				}
+
 				r = true;
 			} catch (OutOfMemoryError e) {
-				// Bitmap.createBitmap() may cause OOM error
+				// Bitmap.createBitmap() may cause OOM error even after the pool is emptied
 				// Simply ignore and fallback
+				if (mMetrics != null) {
+					mMetrics.outOfMemory();
+				}
 			} finally {
 				if (!r) {
 					release();
@@ -218,10 +1015,56 @@ public class RealtimeBlurView extends View {
 			}
 		}
 
+		if (tiled) {
+			mTiles.set(scaledWidth, scaledHeight, halo);
+		}
+
 		if (dirty) {
-			if (mBlurImpl.prepare(getContext(), mBitmapToBlur, radius)) {
+			mBlurredValid = false;
+			BlurImpl impl = mBlurImpl;
+			if (usePyramid) {
+				if (mPyramidBlurImpl == null) {
+					mPyramidBlurImpl = new PyramidBlurImpl();
+				}
+				impl = mPyramidBlurImpl;
+			}
+			boolean prepared = impl.prepare(getContext(), mBitmapToBlur, radius);
+			if (!prepared && config != Bitmap.Config.ARGB_8888) {
+				// RenderScript only blurs ARGB_8888
+				if (mFallbackBackend == null || !mFallbackBackend.supportsConfig(config)) {
+					if (mFallbackBlurImpl != null) {
+						awaitAsyncBlur();
+						mFallbackBlurImpl.release();
+						mFallbackBlurImpl = null;
+					}
+					mFallbackBackend = BlurImplRegistry.select(getContext(), config);
+					if (mFallbackBackend != null) {
+						mFallbackBlurImpl = mFallbackBackend.create();
+					}
+				}
+				if (mFallbackBlurImpl != null) {
+					impl = mFallbackBlurImpl;
+					prepared = impl.prepare(getContext(), mBitmapToBlur, radius);
+				}
+			}
+			if (prepared) {
+				if (impl != mActiveImpl) {
+					awaitAsyncBlur();
+					mActiveImpl = impl;
+					if (mMetrics != null) {
+						mMetrics.setBackend(impl.getClass().getSimpleName());
+					}
+				}
 				mDirty = false;
+				mBlurredRadius = radius;
+				if (mChangeDetector != null) {
+					// blurred bitmap is outdated
+					mChangeDetector.reset();
+				}
 			} else {
+				if (mMetrics != null) {
+					mMetrics.frameFailed();
+				}
 				return false;
 			}
 		}
@@ -230,12 +1073,410 @@ public class RealtimeBlurView extends View {
 	}
 
 	protected void blur(Bitmap bitmapToBlur, Bitmap blurredBitmap) {
-		mBlurImpl.blur(bitmapToBlur, blurredBitmap);
+		mActiveImpl.blur(bitmapToBlur, blurredBitmap);
+	}
+
+	/**
+	 * Blur mBitmapToBlur into blurredBitmap, called on the background thread in async mode
+	 *
+	 * @return false if it is skipped since the content didn't change
+	 */
+	private boolean blurCapture(Bitmap blurredBitmap) {
+		final BlurMetrics metrics = mMetrics;
+		final DownsampleGovernor governor = mGovernor;
+		final long start = metrics != null || governor != null ? System.nanoTime() : 0;
+		boolean blurred = blurCaptureIfChanged(blurredBitmap);
+		final long time = start != 0 ? System.nanoTime() - start : 0;
+		if (governor != null && blurred) {
+			governor.addBlurTime(time);
+		}
+		if (metrics != null) {
+			if (blurred) {
+				metrics.record(BlurMetrics.STAGE_BLUR, time);
+				metrics.frameDone();
+			} else {
+				metrics.frameSkipped();
+			}
+		}
+		return blurred;
+	}
+
+	private boolean blurCaptureIfChanged(Bitmap blurredBitmap) {
+		if (mChangeDetector == null) {
+			blur(mBitmapToBlur, blurredBitmap);
+		} else if (mIncrementalBlur && mActiveImpl instanceof RegionBlurImpl) {
+			if (!mChangeDetector.update(mBitmapToBlur, mChangedRect)) {
+				return false;
+			}
+			((RegionBlurImpl) mActiveImpl).blur(mBitmapToBlur, blurredBitmap, mChangedRect);
+		} else if (!mChangeDetector.update(mBitmapToBlur)) {
+			return false;
+		} else {
+			blur(mBitmapToBlur, blurredBitmap);
+		}
+		return true;
+	}
+
+	private final AsyncBlurPipeline.Job asyncJob = new AsyncBlurPipeline.Job() {
+		@Override
+		public boolean blur(Bitmap back) {
+			return blurCapture(back);
+		}
+	};
+
+	private final AsyncBlurPipeline.Callback asyncCallback = new AsyncBlurPipeline.Callback() {
+		@Override
+		public void onFrameDone(boolean swapped, boolean dropped) {
+			if (swapped || dropped) {
+				postInvalidate();
+			}
+			if (swapped && mSnapshotMode) {
+				post(freezeSnapshot);
+			}
+			View decor = mDecorView;
+			if (dropped && mDifferentRoot && decor != null) {
+				// capture again, the decor view is on another window
+				decor.postInvalidate();
+			}
+		}
+	};
+
+	private int getEraseColor() {
+		return getEraseColor(mBitmapToBlur.getConfig(), mOverlayColor);
+	}
+
+	// just erase transparent, or the opaque overlay color without alpha channel
+	static int getEraseColor(Bitmap.Config config, int overlayColor) {
+		return config == Bitmap.Config.RGB_565 ? overlayColor | 0xff000000 : overlayColor & 0xffffff;
+	}
+
+	/**
+	 * Draw what is behind the view into mBitmapToBlur
+	 *
+	 * @param x position of the view in the decor view
+	 */
+	private void captureBehind(View decor, int x, int y) {
+		final BlurMetrics metrics = mMetrics;
+		final DownsampleGovernor governor = mGovernor;
+		final long start = metrics != null || governor != null ? System.nanoTime() : 0;
+		long time = start;
+		mBitmapToBlur.eraseColor(getEraseColor());
+		if (metrics != null) {
+			long now = System.nanoTime();
+			metrics.record(BlurMetrics.STAGE_ERASE, now - time);
+			metrics.setBitmapSize(mBitmapToBlur.getWidth(), mBitmapToBlur.getHeight());
+			time = now;
+		}
+
+		int rc = mBlurringCanvas.save();
+		try {
+			mBlurringCanvas.scale(1.f * mBitmapToBlur.getWidth() / getWidth(), 1.f * mBitmapToBlur.getHeight() / getHeight());
+			mBlurringCanvas.translate(-x, -y);
+			// draws everything below me, other blur views below me draw their blurred bitmap
+			mCapture.capture(decor, this, mBlurringCanvas);
+		} finally {
+			mBlurringCanvas.restoreToCount(rc);
+		}
+		if (start != 0) {
+			long now = System.nanoTime();
+			if (metrics != null) {
+				metrics.record(BlurMetrics.STAGE_CAPTURE, now - time);
+			}
+			if (governor != null) {
+				governor.addCaptureTime(now - start);
+			}
+		}
+	}
+
+	/**
+	 * Capture once and blur the levels of mLadder
+	 */
+	private void buildLadder() {
+		View decor = mDecorView;
+		if (decor == null || !isShown() || !prepare()) {
+			// try again on the next frame
+			return;
+		}
+		if (mTileBitmap != null) {
+			// the capture is a tile, not the whole view
+			mLadder.setFallback();
+			return;
+		}
+		final int[] locations = new int[2];
+		decor.getLocationOnScreen(locations);
+		int x = -locations[0];
+		int y = -locations[1];
+		getLocationOnScreen(locations);
+		x += locations[0];
+		y += locations[1];
+
+		captureBehind(decor, x, y);
+		float scale = 1.f * mBitmapToBlur.getWidth() / getWidth();
+		// the pyramid blurs any radius
+		float maxRadius = mActiveImpl == mPyramidBlurImpl ? Float.MAX_VALUE : getMaxBlurRadius();
+		if (!mLadder.build(getContext(), mActiveImpl, mBitmapToBlur, scale, maxRadius)) {
+			mLadder.setFallback();
+		}
+		// the impl is prepared for the radius of the last level
+		mDirty = true;
+		invalidate();
+	}
+
+	private void recordRenderEffect() {
+		View decor = mDecorView;
+		if (decor == null || !isShown()) {
+			return;
+		}
+		if (mRenderEffect == null) {
+			// no bitmap from now on
+			release();
+			mRenderEffect = new RenderEffectBlur();
+			if (mMetrics != null) {
+				mMetrics.setBackend(RenderEffectBlur.class.getSimpleName());
+			}
+		}
+		final int[] locations = new int[2];
+		decor.getLocationOnScreen(locations);
+		int x = -locations[0];
+		int y = -locations[1];
+		getLocationOnScreen(locations);
+		x += locations[0];
+		y += locations[1];
+
+		final BlurMetrics metrics = mMetrics;
+		final long start = metrics != null ? System.nanoTime() : 0;
+		boolean redraw = !mRenderEffect.hasContent();
+		mRenderEffect.record(decor, this, mCapture, x, y, mBlurRadius);
+		if (metrics != null) {
+			metrics.record(BlurMetrics.STAGE_CAPTURE, System.nanoTime() - start);
+			metrics.setBitmapSize(0, 0);
+			metrics.frameDone();
+		}
+		onRefreshed();
+		if (redraw) {
+			// the node is drawn by reference, record our own display list only once
+			invalidate();
+		}
+	}
+
+	/**
+	 * Capture and blur each tile into mBitmapToBlur and mTileBitmap, and copy its valid part
+	 * into mBlurredBitmap, see BlurTiles
+	 */
+	private void blurTiles(View decor, int x, int y) {
+		final BlurMetrics metrics = mMetrics;
+		final DownsampleGovernor governor = mGovernor;
+		final boolean measure = metrics != null || governor != null;
+		long eraseTime = 0, captureTime = 0, blurTime = 0;
+		final int eraseColor = getEraseColor();
+		final float scaleX = 1.f * mBlurredBitmap.getWidth() / getWidth();
+		final float scaleY = 1.f * mBlurredBitmap.getHeight() / getHeight();
+
+		for (int i = 0, count = mTiles.getCount(); i < count; i++) {
+			mTiles.getTile(i, mTileWindow, mTileValid);
+			long t0 = measure ? System.nanoTime() : 0;
+			mBitmapToBlur.eraseColor(eraseColor);
+			long t1 = measure ? System.nanoTime() : 0;
+
+			int rc = mBlurringCanvas.save();
+			try {
+				// whole pixels, the views are drawn the same as without tiles
+				mBlurringCanvas.translate(-mTileWindow.left, -mTileWindow.top);
+				mBlurringCanvas.scale(scaleX, scaleY);
+				mBlurringCanvas.translate(-x, -y);
+				mCapture.capture(decor, this, mBlurringCanvas);
+			} finally {
+				mBlurringCanvas.restoreToCount(rc);
+			}
+			long t2 = measure ? System.nanoTime() : 0;
+
+			blur(mBitmapToBlur, mTileBitmap);
+			mTileSrc.set(mTileValid.left - mTileWindow.left, mTileValid.top - mTileWindow.top,
+					mTileValid.right - mTileWindow.left, mTileValid.bottom - mTileWindow.top);
+			mTileCanvas.drawBitmap(mTileBitmap, mTileSrc, mTileValid, mTilePaint);
+			if (measure) {
+				long t3 = System.nanoTime();
+				eraseTime += t1 - t0;
+				captureTime += t2 - t1;
+				blurTime += t3 - t2;
+			}
+		}
+
+		if (governor != null) {
+			governor.addCaptureTime(eraseTime + captureTime);
+			governor.addBlurTime(blurTime);
+		}
+		if (metrics != null) {
+			metrics.record(BlurMetrics.STAGE_ERASE, eraseTime);
+			metrics.record(BlurMetrics.STAGE_CAPTURE, captureTime);
+			metrics.record(BlurMetrics.STAGE_BLUR, blurTime);
+			metrics.setBitmapSize(mBlurredBitmap.getWidth(), mBlurredBitmap.getHeight());
+			metrics.frameDone();
+		}
+	}
+
+	/**
+	 * Move mBlurredBitmap with the content scrolled since the last frame, and only capture
+	 * and blur again a strip at each edge, see ScrollStrips
+	 *
+	 * @return false if the whole content has to be captured and blurred again
+	 */
+	private boolean blurScrolled(View decor, int x, int y) {
+		if (!mBlurredValid || x != mBlurredX || y != mBlurredY || mAsyncPipeline != null || mUsePyramid) {
+			return false;
+		}
+		final int width = mBlurredBitmap.getWidth();
+		final int height = mBlurredBitmap.getHeight();
+		final float scaleX = 1.f * width / getWidth();
+		final float scaleY = 1.f * height / getHeight();
+		final int halo = (int) Math.ceil(mBlurredRadius);
+		if (!mStrips.set(width, height, halo, scaleX, scaleY)) {
+			return false;
+		}
+		if (mStrips.getCount() == 0) {
+			return true;
+		}
+
+		final BlurImplRegistry.Backend backend = mActiveImpl == mBlurImpl ? mBackend
+				: mActiveImpl == mFallbackBlurImpl ? mFallbackBackend : null;
+		if (backend != mStripBackend) {
+			if (mStripImpl != null) {
+				mStripImpl.release();
+				mStripImpl = null;
+			}
+			mStripBackend = backend;
+			if (backend != null) {
+				mStripImpl = backend.create();
+			}
+		}
+		if (mStripImpl == null) {
+			// getBlurImpl() is overridden, no other impl of it
+			return false;
+		}
+
+		final Bitmap.Config config = mBlurredBitmap.getConfig();
+		final int stripWidth = mStrips.getStripWidth();
+		final int stripHeight = mStrips.getStripHeight();
+		try {
+			if (mStripBitmap == null || mStripBitmap.getWidth() != stripWidth
+					|| mStripBitmap.getHeight() != stripHeight || mStripBitmap.getConfig() != config) {
+				releaseStripBitmap();
+				if (mStripCanvas == null) {
+					mStripCanvas = new Canvas();
+					mShiftCanvas = new Canvas();
+					// replace the pixels of the last frame
+					mShiftPaint = new Paint();
+					mShiftPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+				}
+				mStripBitmap = BlurBitmapPool.obtain(stripWidth, stripHeight, config);
+				mStripBlurredBitmap = BlurBitmapPool.obtain(stripWidth, stripHeight, config);
+				if (mStripBitmap != null) {
+					mStripCanvas.setBitmap(mStripBitmap);
+				}
+			}
+			if (mShiftBitmap == null || mShiftBitmap.getWidth() != width
+					|| mShiftBitmap.getHeight() != height || mShiftBitmap.getConfig() != config) {
+				if (mShiftBitmap != null) {
+					BlurBitmapPool.put(mShiftBitmap);
+				}
+				mShiftBitmap = BlurBitmapPool.obtain(width, height, config);
+			}
+		} catch (OutOfMemoryError e) {
+			// blur the whole content instead
+			releaseStripBitmap();
+			return false;
+		}
+		if (mStripBitmap == null || mStripBlurredBitmap == null || mShiftBitmap == null
+				|| !mStripImpl.prepare(getContext(), mStripBitmap, mBlurredRadius)) {
+			releaseStripBitmap();
+			return false;
+		}
+
+		final BlurMetrics metrics = mMetrics;
+		final long start = metrics != null ? System.nanoTime() : 0;
+		long captureTime = 0;
+
+		// move the last frame into the other bitmap, the part scrolled in is blurred below
+		mShiftCanvas.setBitmap(mShiftBitmap);
+		mShiftCanvas.drawBitmap(mBlurredBitmap, mStrips.getShiftX(), mStrips.getShiftY(), mShiftPaint);
+		Bitmap moved = mShiftBitmap;
+		mShiftBitmap = mBlurredBitmap;
+		mBlurredBitmap = moved;
+		mShiftCanvas.setBitmap(mBlurredBitmap);
+		long time = metrics != null ? System.nanoTime() : 0;
+		final int eraseColor = getEraseColor();
+
+		for (int i = 0, count = mStrips.getCount(); i < count; i++) {
+			mStrips.getStrip(i, mTileWindow, mTileValid);
+			mStripBitmap.eraseColor(eraseColor);
+			int rc = mStripCanvas.save();
+			try {
+				// whole pixels, the views are drawn the same as in the whole capture
+				mStripCanvas.translate(-mTileWindow.left, -mTileWindow.top);
+				mStripCanvas.scale(scaleX, scaleY);
+				// where the moved bitmap has the content
+				mStripCanvas.translate(-x + mStrips.getScrollX(), -y + mStrips.getScrollY());
+				mCapture.capture(decor, this, mStripCanvas);
+			} finally {
+				mStripCanvas.restoreToCount(rc);
+			}
+			long t = metrics != null ? System.nanoTime() : 0;
+			captureTime += t - time;
+			time = t;
+
+			mStripImpl.blur(mStripBitmap, mStripBlurredBitmap);
+			mTileSrc.set(mTileValid.left - mTileWindow.left, mTileValid.top - mTileWindow.top,
+					mTileValid.right - mTileWindow.left, mTileValid.bottom - mTileWindow.top);
+			mShiftCanvas.drawBitmap(mStripBlurredBitmap, mTileSrc, mTileValid, mShiftPaint);
+			time = metrics != null ? System.nanoTime() : 0;
+		}
+		mShiftCanvas.setBitmap(null);
+		if (mChangeDetector != null) {
+			// its last capture is outdated
+			mChangeDetector.reset();
+		}
+		// a new bitmap to draw
+		invalidate();
+
+		// not told to the governor, a scrolled frame is no measure of the downsample factor
+		if (metrics != null) {
+			metrics.record(BlurMetrics.STAGE_CAPTURE, captureTime);
+			// moving the last frame counts as blur
+			metrics.record(BlurMetrics.STAGE_BLUR, time - start - captureTime);
+			metrics.setBitmapSize(stripWidth, stripHeight);
+			metrics.frameDone();
+		}
+		return true;
 	}
 
 	private final ViewTreeObserver.OnPreDrawListener preDrawListener = new ViewTreeObserver.OnPreDrawListener() {
 		@Override
 		public boolean onPreDraw() {
+			if (mLadder != null && !mLadder.isFallback()) {
+				// the capture stays the same during the animation
+				if (mLadder.isPending()) {
+					buildLadder();
+				}
+				return true;
+			}
+			if (!shouldRefresh()) {
+				mSkippedRefreshCount++;
+				return true;
+			}
+			if (useRenderEffect()) {
+				recordRenderEffect();
+				return true;
+			} else if (mRenderEffect != null) {
+				releaseRenderEffect();
+				invalidate();
+			}
+			if (mAsyncPipeline != null && !mAsyncPipeline.beginFrame()) {
+				// still blurring the last frame, drop this one
+				if (mMetrics != null) {
+					mMetrics.frameSkipped();
+				}
+				return true;
+			}
 			final int[] locations = new int[2];
 			Bitmap oldBmp = mBlurredBitmap;
 			View decor = mDecorView;
@@ -250,31 +1491,30 @@ public class RealtimeBlurView extends View {
 				x += locations[0];
 				y += locations[1];
 
-				// just erase transparent
-				mBitmapToBlur.eraseColor(mOverlayColor & 0xffffff);
-
-				int rc = mBlurringCanvas.save();
-				mIsRendering = true;
-				RENDERING_COUNT++;
-				try {
-					mBlurringCanvas.scale(1.f * mBitmapToBlur.getWidth() / getWidth(), 1.f * mBitmapToBlur.getHeight() / getHeight());
-					mBlurringCanvas.translate(-x, -y);
-					if (decor.getBackground() != null) {
-						decor.getBackground().draw(mBlurringCanvas);
+				if (mTileBitmap != null) {
+					blurTiles(decor, x, y);
+				} else if (!mScrolled || redrawBitmap || !blurScrolled(decor, x, y)) {
+					captureBehind(decor, x, y);
+					if (mAsyncPipeline != null) {
+						mAsyncPipeline.submit(asyncJob);
+					} else {
+						blurCapture(mBlurredBitmap);
 					}
-					decor.draw(mBlurringCanvas);
-				} catch (StopException e) {
-				} finally {
-					mIsRendering = false;
-					RENDERING_COUNT--;
-					mBlurringCanvas.restoreToCount(rc);
+					mStrips.reset();
 				}
+				mScrolled = false;
+				// the next scrolled frame can move it
+				mBlurredValid = mTileBitmap == null && mAsyncPipeline == null;
+				mBlurredX = x;
+				mBlurredY = y;
 
-				blur(mBitmapToBlur, mBlurredBitmap);
-
+				onRefreshed();
 				if (redrawBitmap || mDifferentRoot) {
 					invalidate();
 				}
+				if (mAsyncPipeline == null) {
+					freezeSnapshot();
+				}
 			}
 
 			return true;
@@ -298,8 +1538,8 @@ public class RealtimeBlurView extends View {
 		super.onAttachedToWindow();
 		mDecorView = getActivityDecorView();
 		if (mDecorView != null) {
-			mDecorView.getViewTreeObserver().addOnPreDrawListener(preDrawListener);
 			mDifferentRoot = mDecorView.getRootView() != getRootView();
+			registerPreDraw();
 			if (mDifferentRoot) {
 				mDecorView.postInvalidate();
 			}
@@ -310,21 +1550,39 @@ public class RealtimeBlurView extends View {
 
 	@Override
 	protected void onDetachedFromWindow() {
+		unregisterPreDraw();
+		removeCallbacks(scheduledRefresh);
+		removeCallbacks(freezeSnapshot);
+		mRefreshScheduled = false;
+		// the blurred bitmap is released, take a new one when attached again
+		mSnapshotTaken = false;
+		endRadiusAnimation();
+		release();
+		super.onDetachedFromWindow();
+	}
+
+	private void registerPreDraw() {
+		if (mDecorView == null || getWindowToken() == null || mSnapshotTaken) {
+			return;
+		}
+		if (mSharedCapture && !mDifferentRoot) {
+			BlurCoordinator.attach(mDecorView, this);
+		} else {
+			mDecorView.getViewTreeObserver().addOnPreDrawListener(preDrawListener);
+		}
+	}
+
+	private void unregisterPreDraw() {
 		if (mDecorView != null) {
+			BlurCoordinator.detach(mDecorView, this);
 			mDecorView.getViewTreeObserver().removeOnPreDrawListener(preDrawListener);
 		}
-		release();
-		super.onDetachedFromWindow();
 	}
 
 	@Override
 	public void draw(Canvas canvas) {
-		if (mIsRendering) {
-			// Quit here, don't draw views above me
-			throw STOP_EXCEPTION;
-		} else if (RENDERING_COUNT > 0) {
-			// Doesn't support blurview overlap on another blurview
-		} else {
+		// an ancestor drawing itself for a capture stops here, the views above me are clipped away
+		if (!ContentCapture.stopAtTarget(this, canvas)) {
 			super.draw(canvas);
 		}
 	}
@@ -332,7 +1590,52 @@ public class RealtimeBlurView extends View {
 	@Override
 	protected void onDraw(Canvas canvas) {
 		super.onDraw(canvas);
-		drawBlurredBitmap(canvas, mBlurredBitmap, mOverlayColor);
+		final BlurMetrics metrics = mMetrics;
+		final long start = metrics != null ? System.nanoTime() : 0;
+		if (mLadder != null) {
+			drawRadiusAnimation();
+		}
+		if (mRenderEffect != null && canvas.isHardwareAccelerated()) {
+			mRenderEffect.draw(canvas);
+			drawBlurredBitmap(canvas, null, mOverlayColor);
+		} else {
+			drawBlurredBitmap(canvas, mAsyncPipeline != null && !mSharedCapture ? mAsyncPipeline.getFront() : mBlurredBitmap, mOverlayColor);
+		}
+		if (metrics != null) {
+			metrics.record(BlurMetrics.STAGE_DRAW, System.nanoTime() - start);
+		}
+	}
+
+	private void drawRadiusAnimation() {
+		final BlurLadder ladder = mLadder;
+		final float fraction = ladder.getFraction(SystemClock.uptimeMillis());
+		if (ladder.isBuilt()) {
+			ladder.draw(mBlurredBitmap, fraction);
+		} else if (ladder.isFallback()) {
+			float radius = ladder.getRadius(fraction);
+			if (mBlurRadius != radius) {
+				mBlurRadius = radius;
+				mDirty = true;
+			}
+		}
+		if (fraction < 1) {
+			invalidate();
+		} else {
+			endRadiusAnimation();
+			// catch up with what changed behind during the animation
+			refresh();
+		}
+	}
+
+	private void endRadiusAnimation() {
+		if (mLadder != null) {
+			mLadder.release();
+			if (mBlurRadius != mLadder.getTo()) {
+				mBlurRadius = mLadder.getTo();
+				mDirty = true;
+			}
+			mLadder = null;
+		}
 	}
 
 	/**
@@ -343,19 +1646,20 @@ public class RealtimeBlurView extends View {
 	 * @param overlayColor
 	 */
 	protected void drawBlurredBitmap(Canvas canvas, Bitmap blurredBitmap, int overlayColor) {
+		mRectDst.right = getWidth();
+		mRectDst.bottom = getHeight();
 		if (blurredBitmap != null) {
 			mRectSrc.right = blurredBitmap.getWidth();
 			mRectSrc.bottom = blurredBitmap.getHeight();
-			mRectDst.right = getWidth();
-			mRectDst.bottom = getHeight();
-			canvas.drawBitmap(blurredBitmap, mRectSrc, mRectDst, null);
+			Paint paint = null;
+			if (blurredBitmap.getConfig() == Bitmap.Config.ALPHA_8) {
+				// only the coverage is blurred, draw it in the overlay color
+				mPaint.setColor(overlayColor | 0xff000000);
+				paint = mPaint;
+			}
+			canvas.drawBitmap(blurredBitmap, mRectSrc, mRectDst, paint);
 		}
 		mPaint.setColor(overlayColor);
 		canvas.drawRect(mRectDst, mPaint);
 	}
-
-	private static class StopException extends RuntimeException {
-	}
-
-	private static StopException STOP_EXCEPTION = new StopException();
 }
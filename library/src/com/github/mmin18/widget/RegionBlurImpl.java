@@ -0,0 +1,18 @@
+package com.github.mmin18.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+/**
+ * A BlurImpl that can blur again only the part of the output affected by a change
+ * in the input, the rest of the output is kept from the last blur.
+ */
+interface RegionBlurImpl extends BlurImpl {
+
+	/**
+	 * @param changed bounds of the input pixels changed since the last blur. If the impl
+	 *                has nothing to start from (like after prepare()), it blurs the whole bitmap.
+	 */
+	void blur(Bitmap input, Bitmap output, Rect changed);
+
+}
@@ -0,0 +1,132 @@
+package com.github.mmin18.widget;
+
+import android.graphics.Canvas;
+import android.graphics.Shader;
+import android.os.Build;
+import android.view.View;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Blur on the GPU without any bitmap: what is behind the view is recorded into a
+ * RenderNode with a blur RenderEffect, and the view draws the node.
+ * <p>
+ * The node is recorded again on every pre-draw. The views ContentCapture draws (the views
+ * before the path, and the children of the plain layouts it walks into) are recorded as
+ * drawing commands each time. Only their own children are recorded as references to their
+ * RenderNodes.
+ * <p>
+ * RenderNode and RenderEffect are API 31, the library compiles with an older SDK, so they
+ * are called by reflection.
+ */
+final class RenderEffectBlur {
+	private static boolean sResolved;
+	private static Constructor<?> sNewNode;
+	private static Method sSetPosition, sSetRenderEffect, sBeginRecording, sEndRecording;
+	private static Method sHasDisplayList, sDiscardDisplayList, sDrawRenderNode, sCreateBlurEffect;
+
+	private final Object mNode;
+	private float mRadius;
+
+	RenderEffectBlur() {
+		try {
+			mNode = sNewNode.newInstance("RealtimeBlurView");
+		} catch (InvocationTargetException e) {
+			throw unwrap(e);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * UI thread only
+	 *
+	 * @return false below API 31, or if the methods are not there
+	 */
+	static boolean isAvailable() {
+		if (!sResolved) {
+			sResolved = true;
+			if (Build.VERSION.SDK_INT >= 31) {
+				resolve();
+			}
+		}
+		return sNewNode != null;
+	}
+
+	private static void resolve() {
+		try {
+			Class<?> node = Class.forName("android.graphics.RenderNode");
+			Class<?> effect = Class.forName("android.graphics.RenderEffect");
+			sSetPosition = node.getMethod("setPosition", int.class, int.class, int.class, int.class);
+			sSetRenderEffect = node.getMethod("setRenderEffect", effect);
+			sBeginRecording = node.getMethod("beginRecording", int.class, int.class);
+			sEndRecording = node.getMethod("endRecording");
+			sHasDisplayList = node.getMethod("hasDisplayList");
+			sDiscardDisplayList = node.getMethod("discardDisplayList");
+			sDrawRenderNode = Canvas.class.getMethod("drawRenderNode", node);
+			sCreateBlurEffect = effect.getMethod("createBlurEffect", float.class, float.class, Shader.TileMode.class);
+			sNewNode = node.getConstructor(String.class);
+		} catch (Exception e) {
+			sNewNode = null;
+		}
+	}
+
+	/**
+	 * @param x position of the view in the decor view
+	 */
+	void record(View decor, View view, ContentCapture capture, int x, int y, float radius) {
+		final int width = view.getWidth();
+		final int height = view.getHeight();
+		invoke(sSetPosition, mNode, 0, 0, width, height);
+		if (mRadius != radius) {
+			invoke(sSetRenderEffect, mNode, invoke(sCreateBlurEffect, null, radius, radius, Shader.TileMode.CLAMP));
+			mRadius = radius;
+		}
+		Canvas canvas = (Canvas) invoke(sBeginRecording, mNode, width, height);
+		try {
+			canvas.translate(-x, -y);
+			capture.capture(decor, view, canvas);
+		} finally {
+			invoke(sEndRecording, mNode);
+		}
+	}
+
+	boolean hasContent() {
+		return (Boolean) invoke(sHasDisplayList, mNode);
+	}
+
+	/**
+	 * @param canvas must be hardware accelerated
+	 */
+	void draw(Canvas canvas) {
+		invoke(sDrawRenderNode, canvas, mNode);
+	}
+
+	void release() {
+		invoke(sDiscardDisplayList, mNode);
+		mRadius = 0;
+	}
+
+	private static Object invoke(Method method, Object receiver, Object... args) {
+		try {
+			return method.invoke(receiver, args);
+		} catch (InvocationTargetException e) {
+			throw unwrap(e);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static RuntimeException unwrap(InvocationTargetException e) {
+		Throwable cause = e.getCause();
+		if (cause instanceof RuntimeException) {
+			return (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return new RuntimeException(cause);
+	}
+}
@@ -0,0 +1,154 @@
+package com.github.mmin18.widget;
+
+import android.graphics.Rect;
+
+/**
+ * The strips to blur again after moving the last blurred bitmap with the content scrolled
+ * behind the view, see RealtimeBlurView.notifyContentScrolled().
+ * <p>
+ * The moved bitmap is the same as blurring the moved content, except for the part that
+ * scrolled in and the halo (the blur radius) next to it, and the halo at the other edge,
+ * which was blurred with the pixels that scrolled out instead of clamped at the edge. Both
+ * are blurred again in a strip of the same size at each edge, clamped like the whole bitmap
+ * at the edge and valid up to the halo on the inner side.
+ * <p>
+ * The bitmap moves by whole capture pixels, the rest of the scroll is carried to the next
+ * frames. The strips are captured with the content moved back by that rest, so they line up
+ * with the moved bitmap. The blur is at most half a capture pixel behind the content.
+ */
+final class ScrollStrips {
+	// the most the content can move per frame in capture pixels, blurred as a whole if more
+	static final int MAX_SHIFT = 64;
+
+	// scrolled in view pixels, not moved yet
+	private float mScrollX, mScrollY;
+	private int mWidth, mHeight, mHalo;
+	private int mShiftX, mShiftY;
+	private int mStripWidth, mStripHeight;
+
+	/**
+	 * @return size of the strips across the scroll
+	 */
+	static int getStripSize(int size, int halo) {
+		return Math.min(size, MAX_SHIFT + 2 * halo);
+	}
+
+	/**
+	 * @param dx scrolled right in view pixels, the content moves left
+	 * @param dy scrolled down in view pixels, the content moves up
+	 */
+	void scroll(int dx, int dy) {
+		mScrollX += dx;
+		mScrollY += dy;
+	}
+
+	/**
+	 * The whole content is blurred again
+	 */
+	void reset() {
+		mScrollX = 0;
+		mScrollY = 0;
+	}
+
+	/**
+	 * Move by the whole capture pixels scrolled since the last frame
+	 *
+	 * @param scaleX from view pixels to capture pixels
+	 * @return false if the whole bitmap has to be blurred again
+	 */
+	boolean set(int width, int height, int halo, float scaleX, float scaleY) {
+		// the content moves the other way
+		final int shiftX = Math.round(-mScrollX * scaleX);
+		final int shiftY = Math.round(-mScrollY * scaleY);
+		if (shiftX == 0 && shiftY == 0) {
+			// nothing to move yet, whichever axis it is
+			mShiftX = 0;
+			mShiftY = 0;
+			return true;
+		}
+		if (shiftX != 0 && shiftY != 0) {
+			return false;
+		}
+		final boolean vertical = shiftX == 0;
+		final int size = vertical ? height : width;
+		final int strip = getStripSize(size, halo);
+		if (Math.abs(vertical ? shiftY : shiftX) > MAX_SHIFT || 2 * strip >= size) {
+			// as much to blur as the whole bitmap
+			return false;
+		}
+		mWidth = width;
+		mHeight = height;
+		mHalo = halo;
+		mShiftX = shiftX;
+		mShiftY = shiftY;
+		// the rest moves with the next frames
+		mScrollX += shiftX / scaleX;
+		mScrollY += shiftY / scaleY;
+		mStripWidth = vertical ? width : strip;
+		mStripHeight = vertical ? strip : height;
+		return true;
+	}
+
+	/**
+	 * @return 0 if the content didn't move a whole pixel, otherwise one strip at each edge
+	 */
+	int getCount() {
+		return mShiftX == 0 && mShiftY == 0 ? 0 : 2;
+	}
+
+	/**
+	 * @return the content moved right in capture pixels, only one axis can move
+	 */
+	int getShiftX() {
+		return mShiftX;
+	}
+
+	int getShiftY() {
+		return mShiftY;
+	}
+
+	/**
+	 * @return scrolled in view pixels but not moved yet, the strips are captured with the
+	 * content moved right by it
+	 */
+	float getScrollX() {
+		return mScrollX;
+	}
+
+	float getScrollY() {
+		return mScrollY;
+	}
+
+	int getStripWidth() {
+		return mStripWidth;
+	}
+
+	int getStripHeight() {
+		return mStripHeight;
+	}
+
+	/**
+	 * @param index  0 for the left or top edge, 1 for the other one
+	 * @param window the strip in the bitmap
+	 * @param valid  the part of the strip to copy into the moved bitmap
+	 */
+	void getStrip(int index, Rect window, Rect valid) {
+		if (mShiftY != 0) {
+			int top = index == 0 ? 0 : mHeight - mStripHeight;
+			window.set(0, top, mWidth, top + mStripHeight);
+			if (index == 0) {
+				valid.set(0, 0, mWidth, Math.max(mShiftY, 0) + mHalo);
+			} else {
+				valid.set(0, mHeight - Math.max(-mShiftY, 0) - mHalo, mWidth, mHeight);
+			}
+		} else {
+			int left = index == 0 ? 0 : mWidth - mStripWidth;
+			window.set(left, 0, left + mStripWidth, mHeight);
+			if (index == 0) {
+				valid.set(0, 0, Math.max(mShiftX, 0) + mHalo, mHeight);
+			} else {
+				valid.set(mWidth - Math.max(-mShiftX, 0) - mHalo, 0, mWidth, mHeight);
+			}
+		}
+	}
+}
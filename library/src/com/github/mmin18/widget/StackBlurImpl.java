@@ -0,0 +1,248 @@
+package com.github.mmin18.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import com.github.mmin18.blur.Pixels;
+import com.github.mmin18.blur.StackBlur;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Pure java blur without RenderScript. The horizontal pass is split by rows and the
+ * vertical pass by columns, and both run on a small shared thread pool.
+ * <p>
+ * The result of both passes is kept, so a change in the input only needs the pixels
+ * around it to be blurred again.
+ * <p>
+ * RGB_565 and ALPHA_8 bitmaps are expanded to 32-bit pixels for the blur and packed back.
+ */
+public class StackBlurImpl implements RegionBlurImpl {
+	// don't bother the thread pool for tiny bitmaps
+	private static final int MIN_PIXELS_PER_THREAD = 64 * 64;
+	private static final int THREAD_COUNT = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+	private static ExecutorService EXECUTOR;
+
+	private int mRadius;
+	private int mWidth, mHeight;
+	// mPixels (input) -> horizontal pass -> mScratch -> vertical pass -> mOutput
+	private int[] mPixels, mScratch, mOutput;
+	private IntBuffer mPixelBuffer, mOutputBuffer;
+	private Bitmap.Config mConfig;
+	// RGB_565 or ALPHA_8 pixels as in the bitmap, rows may be padded
+	private short[] mShorts;
+	private byte[] mBytes;
+	private ShortBuffer mShortBuffer;
+	private ByteBuffer mByteBuffer;
+	private int mStride;
+	// mScratch and mOutput are the result of the last blur
+	private boolean mValid;
+	private final BlurTask[] mTasks = new BlurTask[THREAD_COUNT];
+
+	public StackBlurImpl() {
+		for (int i = 0; i < mTasks.length; i++) {
+			mTasks[i] = new BlurTask(i);
+		}
+	}
+
+	@Override
+	public boolean prepare(Context context, Bitmap buffer, float radius) {
+		Bitmap.Config config = buffer.getConfig();
+		if (config != Bitmap.Config.ARGB_8888 && config != Bitmap.Config.RGB_565 && config != Bitmap.Config.ALPHA_8) {
+			return false;
+		}
+		mRadius = Math.max(0, Math.min(StackBlur.MAX_RADIUS, Math.round(radius)));
+
+		int width = buffer.getWidth();
+		int height = buffer.getHeight();
+		if (mPixels == null || mPixels.length != width * height) {
+			mPixels = new int[width * height];
+			mScratch = new int[width * height];
+			mOutput = new int[width * height];
+			mPixelBuffer = IntBuffer.wrap(mPixels);
+			mOutputBuffer = IntBuffer.wrap(mOutput);
+		}
+		if (config == Bitmap.Config.RGB_565) {
+			int stride = buffer.getRowBytes() / 2;
+			if (mShorts == null || mShorts.length != stride * height) {
+				mShorts = new short[stride * height];
+				mShortBuffer = ShortBuffer.wrap(mShorts);
+			}
+			mStride = stride;
+		} else if (config == Bitmap.Config.ALPHA_8) {
+			int stride = buffer.getRowBytes();
+			if (mBytes == null || mBytes.length != stride * height) {
+				mBytes = new byte[stride * height];
+				mByteBuffer = ByteBuffer.wrap(mBytes);
+			}
+			mStride = stride;
+		}
+		mConfig = config;
+		mWidth = width;
+		mHeight = height;
+		mValid = false;
+		return true;
+	}
+
+	@Override
+	public void release() {
+		mPixels = null;
+		mScratch = null;
+		mOutput = null;
+		mPixelBuffer = null;
+		mOutputBuffer = null;
+		mShorts = null;
+		mBytes = null;
+		mShortBuffer = null;
+		mByteBuffer = null;
+		mValid = false;
+	}
+
+	@Override
+	public void blur(Bitmap input, Bitmap output) {
+		blur(input, output, null);
+	}
+
+	@Override
+	public void blur(Bitmap input, Bitmap output, Rect changed) {
+		readPixels(input);
+
+		if (!mValid || changed == null) {
+			runPass(false, 0, 0, mWidth, mHeight);
+			runPass(true, 0, 0, mWidth, mHeight);
+			mValid = true;
+		} else if (!changed.isEmpty()) {
+			// a changed pixel affects the horizontal pass within radius on its row,
+			// and then the vertical pass within radius on those columns
+			int left = Math.max(0, changed.left - mRadius);
+			int right = Math.min(mWidth, changed.right + mRadius);
+			runPass(false, left, changed.top, right, changed.bottom);
+			runPass(true, left, Math.max(0, changed.top - mRadius), right, Math.min(mHeight, changed.bottom + mRadius));
+		}
+
+		writePixels(output);
+	}
+
+	private void readPixels(Bitmap input) {
+		if (mConfig == Bitmap.Config.RGB_565) {
+			mShortBuffer.rewind();
+			input.copyPixelsToBuffer(mShortBuffer);
+			Pixels.expandRgb565(mShorts, mStride, mPixels, mWidth, mHeight);
+		} else if (mConfig == Bitmap.Config.ALPHA_8) {
+			mByteBuffer.rewind();
+			input.copyPixelsToBuffer(mByteBuffer);
+			Pixels.expandAlpha8(mBytes, mStride, mPixels, mWidth, mHeight);
+		} else {
+			mPixelBuffer.rewind();
+			input.copyPixelsToBuffer(mPixelBuffer);
+		}
+	}
+
+	private void writePixels(Bitmap output) {
+		if (mConfig == Bitmap.Config.RGB_565) {
+			Pixels.packRgb565(mOutput, mShorts, mStride, mWidth, mHeight);
+			mShortBuffer.rewind();
+			output.copyPixelsFromBuffer(mShortBuffer);
+		} else if (mConfig == Bitmap.Config.ALPHA_8) {
+			Pixels.packAlpha8(mOutput, mBytes, mStride, mWidth, mHeight);
+			mByteBuffer.rewind();
+			output.copyPixelsFromBuffer(mByteBuffer);
+		} else {
+			mOutputBuffer.rewind();
+			output.copyPixelsFromBuffer(mOutputBuffer);
+		}
+	}
+
+	private void runPass(boolean vertical, int left, int top, int right, int bottom) {
+		int threads = Math.min(THREAD_COUNT, (right - left) * (bottom - top) / MIN_PIXELS_PER_THREAD);
+		if (threads <= 1) {
+			mTasks[0].run(vertical, left, top, right, bottom, 1, null);
+			return;
+		}
+
+		ExecutorService executor = getExecutor();
+		CountDownLatch latch = new CountDownLatch(threads - 1);
+		for (int i = 1; i < threads; i++) {
+			mTasks[i].schedule(vertical, left, top, right, bottom, threads, latch);
+			executor.execute(mTasks[i]);
+		}
+		mTasks[0].run(vertical, left, top, right, bottom, threads, null);
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (EXECUTOR == null) {
+			EXECUTOR = Executors.newFixedThreadPool(THREAD_COUNT - 1, new ThreadFactory() {
+				private int mCount;
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "StackBlur-" + (++mCount));
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return EXECUTOR;
+	}
+
+	private class BlurTask implements Runnable {
+		final int index;
+		final int[] stack = new int[2 * StackBlur.MAX_RADIUS + 1];
+		boolean vertical;
+		int left, top, right, bottom;
+		int count;
+		CountDownLatch latch;
+
+		BlurTask(int index) {
+			this.index = index;
+		}
+
+		void schedule(boolean vertical, int left, int top, int right, int bottom, int count, CountDownLatch latch) {
+			this.vertical = vertical;
+			this.left = left;
+			this.top = top;
+			this.right = right;
+			this.bottom = bottom;
+			this.count = count;
+			this.latch = latch;
+		}
+
+		void run(boolean vertical, int left, int top, int right, int bottom, int count, CountDownLatch latch) {
+			schedule(vertical, left, top, right, bottom, count, latch);
+			run();
+		}
+
+		@Override
+		public void run() {
+			try {
+				if (vertical) {
+					// split by columns
+					int l = left + (right - left) * index / count;
+					int r = left + (right - left) * (index + 1) / count;
+					StackBlur.blurColumns(mScratch, mOutput, mWidth, mHeight, mRadius, l, r, top, bottom, stack);
+				} else {
+					// split by rows
+					int t = top + (bottom - top) * index / count;
+					int b = top + (bottom - top) * (index + 1) / count;
+					StackBlur.blurRows(mPixels, mScratch, mWidth, mRadius, t, b, left, right, stack);
+				}
+			} finally {
+				if (latch != null) {
+					latch.countDown();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package com.github.mmin18.widget;
+
+/**
+ * A BlurImpl that can blur straight from / into the bitmaps with USAGE_SHARED allocations,
+ * which saves the copyFrom() / copyTo() on every frame.
+ */
+interface ZeroCopyBlurImpl extends BlurImpl {
+
+	void setZeroCopy(boolean enabled);
+
+	/**
+	 * @return true if the last blur() went through the shared allocations, false if it
+	 * is disabled or the driver rejected them and it falls back to copy
+	 */
+	boolean isZeroCopy();
+
+}
@@ -0,0 +1,172 @@
+package com.github.mmin18.widget;
+
+import android.graphics.Bitmap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The worker is a queue run by hand, so every step of a frame is deterministic
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class AsyncBlurPipelineTest {
+	private final ArrayDeque<Runnable> mQueue = new ArrayDeque<>();
+	private final Executor mExecutor = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			mQueue.add(command);
+		}
+	};
+	// "swapped,dropped" of each onFrameDone()
+	private final ArrayList<String> mCallbacks = new ArrayList<>();
+	private AsyncBlurPipeline mPipeline;
+	private Bitmap mFront, mBack;
+
+	@Before
+	public void setUp() {
+		mPipeline = new AsyncBlurPipeline(mExecutor, new AsyncBlurPipeline.Callback() {
+			@Override
+			public void onFrameDone(boolean swapped, boolean dropped) {
+				// the state is updated before the callback, it may begin the next frame
+				assertFalse(mPipeline.isBusy());
+				mCallbacks.add(swapped + "," + dropped);
+			}
+		});
+		mFront = Bitmap.createBitmap(4, 4, Bitmap.Config.ARGB_8888);
+		mBack = Bitmap.createBitmap(4, 4, Bitmap.Config.ARGB_8888);
+		mPipeline.setBuffers(mFront, mBack);
+	}
+
+	@Test
+	public void swapsWhenBlurred() {
+		final Bitmap[] blurred = new Bitmap[1];
+		assertTrue(mPipeline.beginFrame());
+		mPipeline.submit(new AsyncBlurPipeline.Job() {
+			@Override
+			public boolean blur(Bitmap back) {
+				blurred[0] = back;
+				return true;
+			}
+		});
+		// nothing runs until the worker does
+		assertTrue(mPipeline.isBusy());
+		assertSame(mFront, mPipeline.getFront());
+		assertEquals(0, mCallbacks.size());
+
+		runWorker();
+		assertSame(mBack, blurred[0]);
+		assertSame(mBack, mPipeline.getFront());
+		assertEquals(1, mPipeline.getSwappedFrameCount());
+		assertEquals("[true,false]", mCallbacks.toString());
+
+		// and the old front is the next back buffer
+		assertTrue(mPipeline.beginFrame());
+		mPipeline.submit(job(true));
+		runWorker();
+		assertSame(mFront, mPipeline.getFront());
+		assertEquals(2, mPipeline.getSwappedFrameCount());
+	}
+
+	@Test
+	public void keepsFrontWhenUnchanged() {
+		assertTrue(mPipeline.beginFrame());
+		mPipeline.submit(job(false));
+		runWorker();
+		assertSame(mFront, mPipeline.getFront());
+		assertEquals(0, mPipeline.getSwappedFrameCount());
+		assertEquals("[false,false]", mCallbacks.toString());
+	}
+
+	@Test
+	public void dropsFramesWhileBusy() {
+		assertTrue(mPipeline.beginFrame());
+		mPipeline.submit(job(true));
+		// two frames come while the first one is blurring, they are dropped, not queued
+		assertFalse(mPipeline.beginFrame());
+		assertFalse(mPipeline.beginFrame());
+		assertEquals(2, mPipeline.getDroppedFrameCount());
+		assertEquals(1, mQueue.size());
+
+		runWorker();
+		// the callback asks for a new frame once
+		assertEquals("[true,true]", mCallbacks.toString());
+		assertTrue(mPipeline.beginFrame());
+		mPipeline.submit(job(true));
+		runWorker();
+		assertEquals("[true,true, true,false]", mCallbacks.toString());
+		assertEquals(2, mPipeline.getSwappedFrameCount());
+	}
+
+	@Test
+	public void submitWhileBusyThrows() {
+		assertTrue(mPipeline.beginFrame());
+		mPipeline.submit(job(true));
+		try {
+			mPipeline.submit(job(true));
+			fail();
+		} catch (IllegalStateException e) {
+			// must begin a frame first
+		}
+		assertEquals(1, mQueue.size());
+	}
+
+	@Test
+	public void failedBlurDoesNotSwap() {
+		assertTrue(mPipeline.beginFrame());
+		mPipeline.submit(new AsyncBlurPipeline.Job() {
+			@Override
+			public boolean blur(Bitmap back) {
+				throw new RuntimeException("blur failed");
+			}
+		});
+		try {
+			runWorker();
+			fail();
+		} catch (RuntimeException e) {
+			assertEquals("blur failed", e.getMessage());
+		}
+		// idle again with the same front buffer
+		assertFalse(mPipeline.isBusy());
+		assertSame(mFront, mPipeline.getFront());
+		assertEquals("[false,false]", mCallbacks.toString());
+		assertTrue(mPipeline.beginFrame());
+	}
+
+	@Test
+	public void awaitIdleReturnsWhenIdle() {
+		mPipeline.awaitIdle();
+		assertTrue(mPipeline.beginFrame());
+		mPipeline.submit(job(true));
+		runWorker();
+		mPipeline.awaitIdle();
+		assertFalse(mPipeline.isBusy());
+	}
+
+	private void runWorker() {
+		assertEquals(1, mQueue.size());
+		mQueue.poll().run();
+	}
+
+	private static AsyncBlurPipeline.Job job(final boolean changed) {
+		return new AsyncBlurPipeline.Job() {
+			@Override
+			public boolean blur(Bitmap back) {
+				return changed;
+			}
+		};
+	}
+}
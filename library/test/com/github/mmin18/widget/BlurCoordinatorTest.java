@@ -0,0 +1,104 @@
+package com.github.mmin18.widget;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class BlurCoordinatorTest {
+	private Activity mActivity;
+	private FrameLayout mContent;
+
+	@Before
+	public void setUp() {
+		mActivity = Robolectric.buildActivity(Activity.class).setup().get();
+		mContent = new FrameLayout(mActivity);
+		mActivity.setContentView(mContent);
+	}
+
+	@Test
+	public void sameOverlayColorSharesCapture() {
+		SharedBlurView a = addView(0, 0x80ff0000);
+		SharedBlurView b = addView(50, 0x40ff0000);
+		preDraw();
+		assertNotNull(a.mShared);
+		// the alpha of the overlay is not in the erase color
+		assertSame(a.mShared, b.mShared);
+	}
+
+	@Test
+	public void erasedWithOverlayColorLikeStandaloneViews() {
+		mActivity.getWindow().getDecorView().setBackground(null);
+		SharedBlurView red = addView(0, 0x80ff0000);
+		SharedBlurView blue = addView(50, 0x800000ff);
+		preDraw();
+		assertNotSame(red.mShared, blue.mShared);
+		// nothing is drawn in the window, what is blurred is the erase color
+		assertEquals(0xff0000, red.mShared.getPixel(0, 0) & 0xffffff);
+		assertEquals(0x0000ff, blue.mShared.getPixel(0, 0) & 0xffffff);
+	}
+
+	@Test
+	public void doesNotReplaceViewsImpl() {
+		SharedBlurView view = addView(0, 0x80ffffff);
+		preDraw();
+		preDraw();
+		assertNotNull(view.mShared);
+		// only the one from the constructor
+		assertEquals(1, view.mImplCount);
+	}
+
+	private SharedBlurView addView(int left, int overlayColor) {
+		SharedBlurView view = new SharedBlurView(mActivity);
+		view.setOverlayColor(overlayColor);
+		view.setSharedCapture(true);
+		FrameLayout.LayoutParams lp = new FrameLayout.LayoutParams(100, 100);
+		lp.leftMargin = left;
+		mContent.addView(view, lp);
+		int spec = View.MeasureSpec.makeMeasureSpec(200, View.MeasureSpec.EXACTLY);
+		mContent.measure(spec, spec);
+		mContent.layout(0, 0, 200, 200);
+		return view;
+	}
+
+	private void preDraw() {
+		mActivity.getWindow().getDecorView().getViewTreeObserver().dispatchOnPreDraw();
+	}
+
+	private static class SharedBlurView extends RealtimeBlurView {
+		Bitmap mShared;
+		int mImplCount;
+
+		SharedBlurView(Context context) {
+			super(context, null);
+		}
+
+		@Override
+		protected BlurImpl getBlurImpl() {
+			mImplCount++;
+			return super.getBlurImpl();
+		}
+
+		@Override
+		void setSharedBlurredBitmap(Bitmap blurred, Rect src) {
+			mShared = blurred;
+			super.setSharedBlurredBitmap(blurred, src);
+		}
+	}
+}
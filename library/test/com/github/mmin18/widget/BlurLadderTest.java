@@ -0,0 +1,60 @@
+package com.github.mmin18.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class BlurLadderTest {
+	private final ArrayList<Float> mPrepared = new ArrayList<>();
+	private final BlurImpl mImpl = new BlurImpl() {
+		@Override
+		public boolean prepare(Context context, Bitmap buffer, float radius) {
+			mPrepared.add(radius);
+			return true;
+		}
+
+		@Override
+		public void release() {
+		}
+
+		@Override
+		public void blur(Bitmap input, Bitmap output) {
+		}
+	};
+
+	@Test
+	public void levelsAreClampedToMaxRadius() {
+		// downsampled by 8 for radius 200, but a 3 px wide view still has a 1 px capture
+		BlurLadder ladder = new BlurLadder(0, 200, 300);
+		Bitmap capture = Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888);
+		assertTrue(ladder.build(RuntimeEnvironment.getApplication(), mImpl, capture, 1 / 3f, 25));
+		// the first level isn't blurred
+		assertEquals(BlurLadder.LEVELS - 1, mPrepared.size());
+		assertEquals(25, mPrepared.get(mPrepared.size() - 1), 0);
+		for (float radius : mPrepared) {
+			assertTrue(radius <= 25);
+		}
+		ladder.release();
+	}
+
+	@Test
+	public void pyramidLevelsAreNotClamped() {
+		BlurLadder ladder = new BlurLadder(0, 200, 300);
+		Bitmap capture = Bitmap.createBitmap(25, 25, Bitmap.Config.ARGB_8888);
+		assertTrue(ladder.build(RuntimeEnvironment.getApplication(), mImpl, capture, 0.25f, Float.MAX_VALUE));
+		assertEquals(50, mPrepared.get(mPrepared.size() - 1), 0);
+		ladder.release();
+	}
+}
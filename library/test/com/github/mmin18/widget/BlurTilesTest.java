@@ -0,0 +1,92 @@
+package com.github.mmin18.widget;
+
+import android.graphics.Rect;
+
+import com.github.mmin18.blur.StackBlur;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Blurring each tile and keeping its valid part is the same as blurring the whole bitmap
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class BlurTilesTest {
+
+	@Test
+	public void tilesHaveNoSeams() {
+		int[][] sizes = {{700, 300}, {257, 1000}, {513, 513}, {300, 40}};
+		for (int[] size : sizes) {
+			for (int radius : new int[]{1, 5, 25}) {
+				assertTilesEqualWhole(size[0], size[1], radius);
+			}
+		}
+	}
+
+	@Test
+	public void oneTileIsTheWholeBitmap() {
+		BlurTiles tiles = new BlurTiles();
+		tiles.set(200, 100, 10);
+		assertEquals(1, tiles.getCount());
+		Rect window = new Rect(), valid = new Rect();
+		tiles.getTile(0, window, valid);
+		assertEquals(new Rect(0, 0, 200, 100), window);
+		assertEquals(window, valid);
+	}
+
+	private static void assertTilesEqualWhole(int width, int height, int radius) {
+		final String name = width + "x" + height + " r=" + radius;
+		int[] src = testPixels(width, height);
+		int[] whole = new int[src.length];
+		new StackBlur(true).blur(src, whole, width, height, radius);
+
+		BlurTiles tiles = new BlurTiles();
+		tiles.set(width, height, radius);
+		final int tileWidth = tiles.getTileWidth();
+		final int tileHeight = tiles.getTileHeight();
+		int[] tileSrc = new int[tileWidth * tileHeight];
+		int[] tileDst = new int[tileWidth * tileHeight];
+		int[] tiled = new int[src.length];
+		int[] covered = new int[src.length];
+		Rect window = new Rect(), valid = new Rect();
+		for (int i = 0, n = tiles.getCount(); i < n; i++) {
+			tiles.getTile(i, window, valid);
+			assertEquals(name, tileWidth, window.width());
+			assertEquals(name, tileHeight, window.height());
+			assertTrue(name, window.contains(valid));
+			for (int y = 0; y < tileHeight; y++) {
+				System.arraycopy(src, (window.top + y) * width + window.left, tileSrc, y * tileWidth, tileWidth);
+			}
+			new StackBlur(true).blur(tileSrc, tileDst, tileWidth, tileHeight, radius);
+			for (int y = valid.top; y < valid.bottom; y++) {
+				for (int x = valid.left; x < valid.right; x++) {
+					tiled[y * width + x] = tileDst[(y - window.top) * tileWidth + x - window.left];
+					covered[y * width + x]++;
+				}
+			}
+		}
+
+		for (int i = 0; i < src.length; i++) {
+			String pixel = name + " pixel " + i % width + "," + i / width;
+			assertTrue(pixel + " not covered", covered[i] > 0);
+			assertEquals(pixel, whole[i], tiled[i]);
+		}
+	}
+
+	private static int[] testPixels(int width, int height) {
+		Random random = new Random(42);
+		int[] pixels = new int[width * height];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = 0xff000000 | random.nextInt(0x1000000);
+		}
+		return pixels;
+	}
+}
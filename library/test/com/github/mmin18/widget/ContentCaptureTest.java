@@ -0,0 +1,339 @@
+package com.github.mmin18.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.animation.AlphaAnimation;
+import android.view.animation.Animation;
+import android.view.animation.Transformation;
+import android.view.animation.TranslateAnimation;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ContentCaptureTest {
+	private final ArrayList<String> mDrawn = new ArrayList<>();
+	private Context mContext;
+	private FrameLayout mDecor;
+	private RealtimeBlurView mTarget;
+	private ClipTrackingCanvas mCanvas;
+
+	@Before
+	public void setUp() {
+		mContext = RuntimeEnvironment.getApplication();
+		mDecor = new FrameLayout(mContext);
+		mTarget = new RealtimeBlurView(mContext, null);
+		mCanvas = new ClipTrackingCanvas();
+	}
+
+	@Test
+	public void walksIntoPlainLayouts() {
+		FrameLayout parent = new FrameLayout(mContext);
+		parent.addView(new RecordingView(mContext, "below"));
+		parent.addView(mTarget);
+		parent.addView(new RecordingView(mContext, "above"));
+		mDecor.addView(parent);
+		layout();
+
+		assertTrue(new ContentCapture().capture(mDecor, mTarget, mCanvas));
+		assertEquals("[below]", mDrawn.toString());
+	}
+
+	@Test
+	public void ancestorDrawingItselfStopsAtTarget() {
+		// like a ListView drawing dividers before its children
+		FrameLayout parent = new FrameLayout(mContext) {
+			@Override
+			public void draw(Canvas canvas) {
+				// the shadow of View.draw() only draws the background
+				dispatchDraw(canvas);
+			}
+
+			@Override
+			protected void dispatchDraw(Canvas canvas) {
+				mDrawn.add("dispatchDraw");
+				int sc = canvas.save();
+				super.dispatchDraw(canvas);
+				canvas.restoreToCount(sc);
+				// like the dividers drawn over the children
+				if (!canvas.quickReject(0, 0, getWidth(), getHeight(), Canvas.EdgeType.BW)) {
+					mDrawn.add("divider");
+				}
+			}
+		};
+		parent.addView(new RecordingView(mContext, "below"));
+		parent.addView(mTarget);
+		parent.addView(new RecordingView(mContext, "above"));
+		mDecor.addView(parent);
+		mDecor.addView(new RecordingView(mContext, "sibling above"));
+		layout();
+
+		// nothing is thrown, what is drawn after the target is clipped away
+		assertTrue(new ContentCapture().capture(mDecor, mTarget, mCanvas));
+		assertEquals("[dispatchDraw, below]", mDrawn.toString());
+		// the saves of the ancestor and the capture are all restored
+		assertEquals(1, mCanvas.getSaveCount());
+		assertFalse(mCanvas.isClipEmpty());
+		// the target doesn't stop it when it is not capturing
+		mDrawn.clear();
+		parent.draw(mCanvas);
+		assertEquals("[dispatchDraw, below, above, divider]", mDrawn.toString());
+		assertEquals(1, mCanvas.getSaveCount());
+	}
+
+	@Test
+	public void stopsInsideLayers() {
+		// the ancestor is half transparent, so it is drawn in a layer
+		FrameLayout parent = new FrameLayout(mContext) {
+			@Override
+			public void draw(Canvas canvas) {
+				dispatchDraw(canvas);
+			}
+
+			@Override
+			protected void dispatchDraw(Canvas canvas) {
+				canvas.saveLayerAlpha(0, 0, getWidth(), getHeight(), 0x80);
+				super.dispatchDraw(canvas);
+				canvas.restore();
+				if (!canvas.quickReject(0, 0, getWidth(), getHeight(), Canvas.EdgeType.BW)) {
+					mDrawn.add("scrim");
+				}
+			}
+		};
+		parent.setAlpha(0.5f);
+		parent.addView(new RecordingView(mContext, "below"));
+		parent.addView(mTarget);
+		parent.addView(new RecordingView(mContext, "above"));
+		mDecor.addView(parent);
+		layout();
+
+		assertTrue(new ContentCapture().capture(mDecor, mTarget, mCanvas));
+		assertEquals("[below]", mDrawn.toString());
+		assertEquals(1, mCanvas.getSaveCount());
+		// both layers are restored once, by the stop and not again by the ancestor
+		assertEquals(2, mCanvas.mLayersRestored);
+	}
+
+	@Test
+	public void clipsOutReachedTargetsInTheDecorCoordinates() {
+		RealtimeBlurView first = new RealtimeBlurView(mContext, null);
+		FrameLayout.LayoutParams lp = new FrameLayout.LayoutParams(30, 30);
+		lp.leftMargin = 10;
+		lp.topMargin = 20;
+		first.setLayoutParams(lp);
+		mDecor.addView(first);
+		FrameLayout moved = new FrameLayout(mContext);
+		lp = new FrameLayout.LayoutParams(FrameLayout.LayoutParams.MATCH_PARENT, FrameLayout.LayoutParams.MATCH_PARENT);
+		lp.leftMargin = 5;
+		moved.setLayoutParams(lp);
+		moved.setScrollX(3);
+		moved.addView(new RecordingView(mContext, "between"));
+		moved.addView(mTarget);
+		mDecor.addView(moved);
+		layout();
+
+		ContentCapture capture = new ContentCapture();
+		assertTrue(capture.capture(mDecor, Arrays.asList(first, mTarget),
+				Arrays.asList(new Rect(10, 20, 40, 50), new Rect(0, 0, 100, 100)), mCanvas));
+		assertEquals("[between]", mDrawn.toString());
+		// in the coordinates of the moved and scrolled layout, and again in its child
+		assertEquals(2, mCanvas.mClippedOut.size());
+		for (RectF clipped : mCanvas.mClippedOut) {
+			assertEquals(new RectF(8, 20, 38, 50), clipped);
+		}
+	}
+
+	@Test
+	public void skipsViewsWhoseAnimationIsOver() {
+		RecordingView gone = new RecordingView(mContext, "gone");
+		mDecor.addView(gone);
+		mDecor.addView(mTarget);
+		layout();
+		// a fade out hides the view when it ends
+		Animation animation = new AlphaAnimation(1, 0);
+		animation.setDuration(100);
+		gone.startAnimation(animation);
+		gone.setVisibility(View.GONE);
+		animation.getTransformation(1000, new Transformation());
+		animation.getTransformation(2000, new Transformation());
+		assertTrue(animation.hasEnded());
+
+		new ContentCapture().capture(mDecor, mTarget, mCanvas);
+		assertEquals("[]", mDrawn.toString());
+	}
+
+	@Test
+	public void appliesRunningAnimation() {
+		RecordingView moving = new RecordingView(mContext, "moving");
+		mDecor.addView(moving);
+		mDecor.addView(mTarget);
+		layout();
+		Animation animation = new TranslateAnimation(0, 40, 0, 0);
+		animation.setDuration(100);
+		moving.startAnimation(animation);
+		// the parent has drawn it once
+		animation.initialize(100, 100, 100, 100);
+		animation.getTransformation(mDecor.getDrawingTime() - 50, new Transformation());
+		assertTrue(animation.hasStarted());
+
+		final ArrayList<Matrix> concats = new ArrayList<>();
+		Canvas canvas = new Canvas(Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888)) {
+			@Override
+			public void concat(Matrix matrix) {
+				concats.add(new Matrix(matrix));
+				super.concat(matrix);
+			}
+		};
+		new ContentCapture().capture(mDecor, mTarget, canvas);
+		assertEquals("[moving]", mDrawn.toString());
+		// half way
+		assertEquals(1, concats.size());
+		float[] values = new float[9];
+		concats.get(0).getValues(values);
+		assertEquals(20, values[Matrix.MTRANS_X], 0.01f);
+	}
+
+	private void layout() {
+		int spec = View.MeasureSpec.makeMeasureSpec(100, View.MeasureSpec.EXACTLY);
+		mDecor.measure(spec, spec);
+		mDecor.layout(0, 0, 100, 100);
+	}
+
+	private class RecordingView extends View {
+		private final String mName;
+
+		RecordingView(Context context, String name) {
+			super(context);
+			mName = name;
+			setLayoutParams(new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+		}
+
+		@Override
+		public void draw(Canvas canvas) {
+			if (!canvas.quickReject(0, 0, getWidth(), getHeight(), Canvas.EdgeType.BW)) {
+				mDrawn.add(mName);
+			}
+		}
+	}
+
+	/**
+	 * The shadow canvas doesn't clip, this one tracks the saves and whether the clip is empty
+	 */
+	private static class ClipTrackingCanvas extends Canvas {
+		// the clip was empty at each save
+		private final ArrayList<Boolean> mSaved = new ArrayList<>();
+		private final ArrayList<Boolean> mLayers = new ArrayList<>();
+		private boolean mEmpty;
+		int mLayersRestored;
+		final ArrayList<RectF> mClippedOut = new ArrayList<>();
+
+		ClipTrackingCanvas() {
+			super(Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888));
+		}
+
+		boolean isClipEmpty() {
+			return mEmpty;
+		}
+
+		private int save(boolean layer) {
+			int count = getSaveCount();
+			mSaved.add(mEmpty);
+			mLayers.add(layer);
+			super.save();
+			return count;
+		}
+
+		@Override
+		public int save() {
+			return save(false);
+		}
+
+		@Override
+		public int saveLayerAlpha(float left, float top, float right, float bottom, int alpha) {
+			return save(true);
+		}
+
+		@Override
+		public int saveLayerAlpha(float left, float top, float right, float bottom, int alpha, int saveFlags) {
+			return save(true);
+		}
+
+		@Override
+		public int getSaveCount() {
+			return mSaved.size() + 1;
+		}
+
+		@Override
+		public void restore() {
+			if (mSaved.isEmpty()) {
+				throw new IllegalStateException("Underflow in restore");
+			}
+			mEmpty = mSaved.remove(mSaved.size() - 1);
+			if (mLayers.remove(mLayers.size() - 1)) {
+				mLayersRestored++;
+			}
+			super.restore();
+		}
+
+		@Override
+		public void restoreToCount(int saveCount) {
+			if (saveCount < 1) {
+				throw new IllegalArgumentException("Underflow in restoreToCount");
+			}
+			while (getSaveCount() > saveCount) {
+				restore();
+			}
+		}
+
+		@Override
+		public boolean clipRect(float left, float top, float right, float bottom) {
+			mEmpty |= left >= right || top >= bottom;
+			return !mEmpty;
+		}
+
+		@Override
+		public boolean clipRect(int left, int top, int right, int bottom) {
+			return clipRect((float) left, top, right, bottom);
+		}
+
+		@Override
+		public boolean clipRect(Rect rect) {
+			return clipRect(rect.left, rect.top, rect.right, rect.bottom);
+		}
+
+		@Override
+		public boolean clipRect(RectF rect) {
+			return clipRect(rect.left, rect.top, rect.right, rect.bottom);
+		}
+
+		@Override
+		public boolean clipOutRect(RectF rect) {
+			mClippedOut.add(new RectF(rect));
+			return !mEmpty;
+		}
+
+		@Override
+		public boolean quickReject(float left, float top, float right, float bottom, EdgeType type) {
+			return mEmpty;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package com.github.mmin18.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ContentChangeDetectorTest {
+
+	@Test
+	public void argb8888() {
+		detectsChanges(Bitmap.Config.ARGB_8888);
+	}
+
+	@Test
+	public void rgb565() {
+		// an async view would capture forever if these always changed
+		detectsChanges(Bitmap.Config.RGB_565);
+	}
+
+	@Test
+	public void alpha8() {
+		detectsChanges(Bitmap.Config.ALPHA_8);
+	}
+
+	@Test
+	public void releaseForgetsTheLastFrame() {
+		ContentChangeDetector detector = new ContentChangeDetector();
+		Bitmap bitmap = Bitmap.createBitmap(9, 7, Bitmap.Config.ARGB_8888);
+		assertTrue(detector.update(bitmap));
+		assertFalse(detector.update(bitmap));
+		detector.release();
+		assertTrue(detector.update(bitmap));
+		assertFalse(detector.update(bitmap));
+	}
+
+	private static void detectsChanges(Bitmap.Config config) {
+		ContentChangeDetector detector = new ContentChangeDetector();
+		// odd width, 565 rows are not a whole number of ints
+		Bitmap bitmap = Bitmap.createBitmap(9, 7, config);
+		bitmap.eraseColor(0xff336699);
+		Rect changed = new Rect();
+
+		// nothing to compare with
+		assertTrue(detector.update(bitmap, changed));
+		assertEquals(new Rect(0, 0, 9, 7), changed);
+		assertFalse(detector.update(bitmap, changed));
+		assertTrue(changed.isEmpty());
+
+		bitmap.setPixel(4, 3, 0xffffffff);
+		assertTrue(detector.update(bitmap, changed));
+		assertEquals(new Rect(4, 3, 5, 4), changed);
+		assertFalse(detector.update(bitmap, changed));
+		assertEquals(2, detector.getHits());
+		assertEquals(2, detector.getMisses());
+	}
+}
@@ -0,0 +1,92 @@
+package com.github.mmin18.widget;
+
+import android.graphics.Bitmap;
+
+import com.github.mmin18.blur.GaussianBlur;
+import com.github.mmin18.blur.GaussianKernelCache;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class GaussianBlurImplTest {
+	// odd width, 565 and alpha rows are padded
+	private static final int WIDTH = 9, HEIGHT = 7;
+
+	@Test
+	public void alpha8MatchesKernel() {
+		Bitmap input = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ALPHA_8);
+		byte[] alpha = new byte[WIDTH * HEIGHT];
+		new Random(8).nextBytes(alpha);
+		int[] colors = new int[alpha.length];
+		for (int i = 0; i < alpha.length; i++) {
+			colors[i] = alpha[i] << 24;
+		}
+		input.setPixels(colors, 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+
+		Bitmap output = blur(input, 3.5f);
+		byte[] expected = new byte[alpha.length];
+		new GaussianBlur(true).blur(alpha, expected, WIDTH, HEIGHT, 3.5f);
+		for (int i = 0; i < alpha.length; i++) {
+			assertEquals(expected[i] & 0xff, output.getPixel(i % WIDTH, i / WIDTH) >>> 24);
+		}
+	}
+
+	@Test
+	public void rgb565IsBlurred() {
+		Bitmap input = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.RGB_565);
+		input.eraseColor(0xff000000);
+		input.setPixel(4, 3, 0xffffffff);
+
+		Bitmap output = blur(input, 2);
+		// spread evenly around the white pixel
+		int center = output.getPixel(4, 3) & 0xff;
+		assertTrue(center > 0 && center < 0xff);
+		assertEquals(output.getPixel(3, 3), output.getPixel(5, 3));
+		assertEquals(output.getPixel(4, 2), output.getPixel(4, 4));
+		assertTrue((output.getPixel(3, 3) & 0xff) > 0);
+	}
+
+	@Test
+	public void doesNotBlurArgb8888() {
+		// RenderScript does those, the registry never selects it for them
+		Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+		assertFalse(new GaussianBlurImpl().prepare(RuntimeEnvironment.getApplication(), bitmap, 4));
+	}
+
+	@Test
+	public void animatedRadiusUsesCachedWeights() {
+		GaussianKernelCache.clear();
+		Bitmap input = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ALPHA_8);
+		Bitmap output = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ALPHA_8);
+		GaussianBlurImpl impl = new GaussianBlurImpl();
+		for (int pass = 0; pass < 2; pass++) {
+			for (int i = 0; i <= 40; i++) {
+				assertTrue(impl.prepare(RuntimeEnvironment.getApplication(), input, i / 4f));
+				impl.blur(input, output);
+			}
+		}
+		// each quarter pixel is computed once
+		assertEquals(41, GaussianKernelCache.getMissCount());
+		assertEquals(41, GaussianKernelCache.getHitCount());
+	}
+
+	private static Bitmap blur(Bitmap input, float radius) {
+		Bitmap output = Bitmap.createBitmap(WIDTH, HEIGHT, input.getConfig());
+		GaussianBlurImpl impl = new GaussianBlurImpl();
+		assertTrue(impl.prepare(RuntimeEnvironment.getApplication(), input, radius));
+		impl.blur(input, output);
+		impl.release();
+		return output;
+	}
+}
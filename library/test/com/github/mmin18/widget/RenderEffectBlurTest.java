@@ -0,0 +1,153 @@
+package com.github.mmin18.widget;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * RenderNode is not in the compile SDK, the test gets it by reflection like RenderEffectBlur
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 31)
+public class RenderEffectBlurTest {
+	private Activity mActivity;
+	private FrameLayout mContent;
+
+	@Before
+	public void setUp() {
+		mActivity = Robolectric.buildActivity(Activity.class).setup().get();
+		mContent = new FrameLayout(mActivity);
+		mActivity.setContentView(mContent);
+	}
+
+	@Test
+	public void recordsWithoutBitmap() throws Exception {
+		RealtimeBlurView view = addView(new HardwareBlurView(mActivity));
+		assertTrue(view.useRenderEffect());
+
+		int obtained = BlurBitmapPool.getHitCount() + BlurBitmapPool.getMissCount();
+		preDraw();
+		assertTrue(view.isRenderEffectActive());
+		assertEquals(obtained, BlurBitmapPool.getHitCount() + BlurBitmapPool.getMissCount());
+
+		// draws the node into a hardware canvas
+		Class<?> nodeClass = Class.forName("android.graphics.RenderNode");
+		Object node = nodeClass.getConstructor(String.class).newInstance("test");
+		nodeClass.getMethod("setPosition", int.class, int.class, int.class, int.class).invoke(node, 0, 0, 100, 100);
+		Canvas canvas = (Canvas) nodeClass.getMethod("beginRecording", int.class, int.class).invoke(node, 100, 100);
+		assertTrue(canvas.isHardwareAccelerated());
+		view.draw(canvas);
+		nodeClass.getMethod("endRecording").invoke(node);
+		assertEquals(obtained, BlurBitmapPool.getHitCount() + BlurBitmapPool.getMissCount());
+	}
+
+	@Test
+	public void notInSoftware() {
+		RealtimeBlurView view = addView(new RealtimeBlurView(mActivity, null));
+		view.setRenderEffectBlur(true);
+		assertFalse(view.useRenderEffect());
+	}
+
+	@Test
+	public void notWhenDisabled() {
+		RealtimeBlurView view = addView(new HardwareBlurView(mActivity));
+		view.setRenderEffectBlur(false);
+		assertFalse(view.useRenderEffect());
+	}
+
+	@Test
+	public void notInSnapshotOrSharedCapture() {
+		RealtimeBlurView view = addView(new HardwareBlurView(mActivity));
+		view.setSnapshotMode(true);
+		assertFalse(view.useRenderEffect());
+		view.setSnapshotMode(false);
+		view.setSharedCapture(true);
+		assertFalse(view.useRenderEffect());
+	}
+
+	@Test
+	public void notWithCustomDrawing() {
+		// like the CustomShapeBlurView of the sample, it needs the blurred bitmap
+		RealtimeBlurView view = addView(new HardwareBlurView(mActivity) {
+			@Override
+			protected void drawBlurredBitmap(Canvas canvas, Bitmap blurredBitmap, int overlayColor) {
+				super.drawBlurredBitmap(canvas, blurredBitmap, overlayColor);
+			}
+		});
+		assertFalse(view.useRenderEffect());
+		preDraw();
+		assertFalse(view.isRenderEffectActive());
+	}
+
+	@Test
+	public void notUnderAncestorDrawingItself() {
+		// its draw() would record the blur view's node into the blur view's own effect
+		FrameLayout parent = new FrameLayout(mActivity) {
+			@Override
+			protected void dispatchDraw(Canvas canvas) {
+				super.dispatchDraw(canvas);
+			}
+		};
+		mContent.addView(parent, new FrameLayout.LayoutParams(100, 100));
+		RealtimeBlurView view = new HardwareBlurView(mActivity);
+		parent.addView(view, new FrameLayout.LayoutParams(100, 100));
+		layout();
+		assertFalse(view.useRenderEffect());
+
+		// fine again in a plain layout
+		parent.removeView(view);
+		addView(view);
+		assertTrue(view.useRenderEffect());
+	}
+
+	@Test
+	@Config(sdk = 28)
+	public void notBeforeApi31() {
+		RealtimeBlurView view = addView(new HardwareBlurView(mActivity));
+		assertFalse(view.useRenderEffect());
+		preDraw();
+		assertFalse(view.isRenderEffectActive());
+	}
+
+	private RealtimeBlurView addView(RealtimeBlurView view) {
+		mContent.addView(view, new FrameLayout.LayoutParams(100, 100));
+		layout();
+		return view;
+	}
+
+	private void layout() {
+		int spec = View.MeasureSpec.makeMeasureSpec(100, View.MeasureSpec.EXACTLY);
+		mContent.measure(spec, spec);
+		mContent.layout(0, 0, 100, 100);
+	}
+
+	private void preDraw() {
+		mActivity.getWindow().getDecorView().getViewTreeObserver().dispatchOnPreDraw();
+	}
+
+	private static class HardwareBlurView extends RealtimeBlurView {
+		HardwareBlurView(Context context) {
+			super(context, null);
+			setRenderEffectBlur(true);
+		}
+
+		@Override
+		public boolean isHardwareAccelerated() {
+			return true;
+		}
+	}
+}
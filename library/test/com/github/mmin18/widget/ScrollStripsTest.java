@@ -0,0 +1,148 @@
+package com.github.mmin18.widget;
+
+import android.graphics.Rect;
+
+import com.github.mmin18.blur.StackBlur;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Moving the last blurred frame and blurring the strips is the same as blurring the whole
+ * capture, for scroll steps that are not whole capture pixels
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ScrollStripsTest {
+	private static final int WIDTH = 40, HEIGHT = 200;
+	// the view is 4 times the capture
+	private static final float SCALE = 0.25f;
+	private static final int RADIUS = 5;
+
+	@Test
+	public void verticalScrollLinesUp() {
+		// view pixels, 0.25 - 1.75 capture pixels each
+		scrollAndCompare(new int[]{0, 3, 5, 2, 7, 1, 6, -3, -5, 2}, true);
+	}
+
+	@Test
+	public void horizontalScrollLinesUp() {
+		scrollAndCompare(new int[]{0, -6, -1, -7, 3, 5, 2, 2}, false);
+	}
+
+	@Test
+	public void subPixelScrollIsCarried() {
+		ScrollStrips strips = new ScrollStrips();
+		strips.scroll(0, 1);
+		assertTrue(strips.set(WIDTH, HEIGHT, RADIUS, SCALE, SCALE));
+		// a quarter capture pixel doesn't move the bitmap
+		assertEquals(0, strips.getCount());
+		assertEquals(1, strips.getScrollY(), 0);
+		strips.scroll(0, 2);
+		assertTrue(strips.set(WIDTH, HEIGHT, RADIUS, SCALE, SCALE));
+		// moved by a whole pixel, the blur is a quarter pixel ahead
+		assertEquals(-1, strips.getShiftY());
+		assertEquals(-1, strips.getScrollY(), 0);
+		strips.reset();
+		assertEquals(0, strips.getScrollY(), 0);
+	}
+
+	@Test
+	public void bothAxesBlurTheWhole() {
+		ScrollStrips strips = new ScrollStrips();
+		strips.scroll(8, 8);
+		assertFalse(strips.set(WIDTH, HEIGHT, RADIUS, SCALE, SCALE));
+	}
+
+	/**
+	 * @param steps view pixels scrolled before each frame
+	 */
+	private static void scrollAndCompare(int[] steps, boolean vertical) {
+		final int width = vertical ? WIDTH : HEIGHT;
+		final int height = vertical ? HEIGHT : WIDTH;
+		ScrollStrips strips = new ScrollStrips();
+		// view pixels scrolled since the first frame
+		int scrolled = 0;
+		int[] blurred = blur(capture(width, height, 0, 0), width, height);
+		int[] moved = new int[blurred.length];
+		Rect window = new Rect(), valid = new Rect();
+		for (int step : steps) {
+			scrolled += step;
+			strips.scroll(vertical ? 0 : step, vertical ? step : 0);
+			assertTrue(strips.set(width, height, RADIUS, SCALE, SCALE));
+			assertTrue(Math.abs(strips.getScrollX() * SCALE) <= 0.5f);
+			assertTrue(Math.abs(strips.getScrollY() * SCALE) <= 0.5f);
+			// where the moved bitmap has the content
+			float scrollX = vertical ? 0 : scrolled - strips.getScrollX();
+			float scrollY = vertical ? scrolled - strips.getScrollY() : 0;
+			int[] capture = capture(width, height, scrollX, scrollY);
+
+			shift(blurred, moved, width, height, strips.getShiftX(), strips.getShiftY());
+			for (int i = 0; i < strips.getCount(); i++) {
+				strips.getStrip(i, window, valid);
+				int[] strip = new int[window.width() * window.height()];
+				for (int y = 0; y < window.height(); y++) {
+					System.arraycopy(capture, (window.top + y) * width + window.left, strip, y * window.width(), window.width());
+				}
+				strip = blur(strip, window.width(), window.height());
+				for (int y = valid.top; y < valid.bottom; y++) {
+					System.arraycopy(strip, (y - window.top) * window.width() + valid.left - window.left,
+							moved, y * width + valid.left, valid.width());
+				}
+			}
+			int[] t = blurred;
+			blurred = moved;
+			moved = t;
+
+			int[] whole = blur(capture, width, height);
+			for (int i = 0; i < whole.length; i++) {
+				String pixel = "scrolled " + scrolled + " pixel " + i % width + "," + i / width;
+				assertEquals(pixel, whole[i] & 0xff, blurred[i] & 0xff, 1);
+			}
+		}
+	}
+
+	/**
+	 * The content scrolled by view pixels, drawn at capture pixels
+	 */
+	private static int[] capture(int width, int height, float scrollX, float scrollY) {
+		int[] pixels = new int[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				// view position of the pixel center in the content
+				double cx = (x + 0.5) / SCALE + scrollX;
+				double cy = (y + 0.5) / SCALE + scrollY;
+				int v = (int) Math.round(128 + 90 * Math.sin(cy / 9) + 30 * Math.cos(cx / 7));
+				pixels[y * width + x] = 0xff000000 | v << 16 | v << 8 | v;
+			}
+		}
+		return pixels;
+	}
+
+	private static int[] blur(int[] src, int width, int height) {
+		int[] dst = new int[src.length];
+		new StackBlur(true).blur(src, dst, width, height, RADIUS);
+		return dst;
+	}
+
+	/**
+	 * Like drawing the bitmap at the shift, what scrolls in is left as it was
+	 */
+	private static void shift(int[] src, int[] dst, int width, int height, int shiftX, int shiftY) {
+		for (int y = 0; y < height; y++) {
+			int sy = y - shiftY;
+			for (int x = 0; x < width; x++) {
+				int sx = x - shiftX;
+				if (sx >= 0 && sx < width && sy >= 0 && sy < height) {
+					dst[y * width + x] = src[sy * width + sx];
+				}
+			}
+		}
+	}
+}